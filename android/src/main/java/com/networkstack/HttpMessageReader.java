@@ -0,0 +1,312 @@
+package com.networkstack;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads one complete HTTP/1.1 request or response from a stream. Never reads past the end of the message, so the
+ * next message on a keep-alive connection can be read afterwards.
+ */
+public class HttpMessageReader {
+
+    /** Receives body progress updates. */
+    public interface ProgressListener {
+        void onProgress(long amountRead);
+    }
+
+    // Longest allowed start line, header line or chunk size line
+    private static final int MAX_LINE_LENGTH = 1024*16;
+
+    // Maximum number of header lines, including trailers
+    private static final int MAX_HEADERS = 256;
+
+    // The stream to read from
+    private final InputStream input;
+
+    // Parsed start line
+    private boolean isResponse;
+    private String version;
+    private int status;
+    private String statusText;
+    private String method;
+    private String target;
+
+    // Parsed headers, with lowercase names. Repeated headers are joined with commas.
+    private final LinkedHashMap<String, String> headers = new LinkedHashMap<>();
+
+    // How the body is delimited
+    private boolean chunked = false;
+    private long contentLength = -1;
+    private boolean closeDelimited = false;
+
+    public HttpMessageReader(InputStream input) {
+        this.input = input;
+    }
+
+    /**
+     * Reads the start line and headers.
+     *
+     * @param requestMethod For responses, the method of the request being answered. Responses to HEAD have no body.
+     */
+    public void readHead(String requestMethod) throws Exception {
+
+        // Read start line, skipping any empty lines left over from a previous message
+        String line = readLine();
+        while (line.isEmpty())
+            line = readLine();
+
+        // Parse start line
+        String[] parts = line.split(" ", 3);
+        if (parts[0].startsWith("HTTP/")) {
+
+            // Response: version, status code, reason phrase
+            if (parts.length < 2)
+                throw new Exception("Invalid HTTP status line.");
+
+            isResponse = true;
+            version = parts[0];
+            status = Integer.parseInt(parts[1]);
+            statusText = parts.length > 2 ? parts[2] : "";
+
+        } else {
+
+            // Request: method, target, version
+            if (parts.length < 3 || !parts[2].startsWith("HTTP/"))
+                throw new Exception("Invalid HTTP request line.");
+
+            isResponse = false;
+            method = parts[0];
+            target = parts[1];
+            version = parts[2];
+
+        }
+
+        // Read headers
+        readHeaders();
+
+        // Figure out how the body is delimited
+        String transferEncoding = headers.get("transfer-encoding");
+        String length = headers.get("content-length");
+        boolean noBody = isResponse && ((status >= 100 && status < 200) || status == 204 || status == 304
+                || "HEAD".equalsIgnoreCase(requestMethod));
+        if (noBody) {
+
+            // Response never has a body
+            contentLength = 0;
+
+        } else if (transferEncoding != null) {
+
+            // Transfer-Encoding overrides Content-Length. The body is only chunked if chunked is the final encoding,
+            // otherwise a response continues until the connection is closed, and a request can't be framed at all.
+            String[] encodings = transferEncoding.split(",");
+            if (encodings[encodings.length - 1].trim().equalsIgnoreCase("chunked"))
+                chunked = true;
+            else if (isResponse)
+                closeDelimited = true;
+            else
+                throw new Exception("Unsupported Transfer-Encoding in HTTP request.");
+
+        } else if (length != null) {
+
+            // Fixed length body. Repeated headers have been joined, and they must all have the same value.
+            String[] values = length.split(",");
+            String value = values[0].trim();
+            for (String other : values)
+                if (!other.trim().equals(value))
+                    throw new Exception("Conflicting Content-Length headers.");
+
+            if (!value.matches("[0-9]{1,18}"))
+                throw new Exception("Invalid Content-Length header.");
+            contentLength = Long.parseLong(value);
+
+        } else if (isResponse) {
+
+            // Response body continues until the connection is closed
+            closeDelimited = true;
+
+        } else {
+
+            // Request without a body
+            contentLength = 0;
+
+        }
+
+    }
+
+    /** Reads the body into the output stream. Chunked trailers are added to the headers. */
+    public long readBody(OutputStream output, ProgressListener listener) throws Exception {
+
+        long amountRead = 0;
+        long lastUpdateTime = System.currentTimeMillis();
+        byte[] buffer = new byte[1024*64];
+        long remaining = chunked ? nextChunkSize() : contentLength;
+        while (remaining != 0) {
+
+            // Read some data
+            int len = (int) (remaining < 0 ? buffer.length : Math.min(buffer.length, remaining));
+            len = input.read(buffer, 0, len);
+            if (len == -1) {
+
+                // Connection closed. This is only expected for close-delimited bodies.
+                if (closeDelimited)
+                    break;
+
+                throw new Exception("Socket closed before all data could be read.");
+
+            }
+
+            // Store it
+            output.write(buffer, 0, len);
+            amountRead += len;
+            if (remaining > 0)
+                remaining -= len;
+
+            // Move on to the next chunk
+            if (chunked && remaining == 0) {
+                if (!readLine().isEmpty())
+                    throw new Exception("Invalid HTTP chunk.");
+                remaining = nextChunkSize();
+            }
+
+            // Notify listener if needed
+            if (listener != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
+                lastUpdateTime = System.currentTimeMillis();
+                listener.onProgress(amountRead);
+            }
+
+        }
+
+        // Read trailers after the last chunk
+        if (chunked)
+            readHeaders();
+
+        return amountRead;
+
+    }
+
+    /** @return True if another message can be read from the connection after this one. */
+    public boolean isKeepAlive() {
+
+        // Connection ends with the body
+        if (closeDelimited)
+            return false;
+
+        // Check connection header. HTTP/1.1 defaults to keep-alive, older versions don't.
+        String connection = headers.get("connection");
+        connection = connection == null ? "" : connection.toLowerCase(Locale.US);
+        if (version.equals("HTTP/1.0"))
+            return connection.contains("keep-alive");
+        else
+            return !connection.contains("close");
+
+    }
+
+    /** Writes the start line, headers and connection info into the map. */
+    public void putHead(WritableMap map) {
+
+        // Add start line
+        map.putString("type", isResponse ? "response" : "request");
+        map.putString("version", version);
+        if (isResponse) {
+            map.putInt("status", status);
+            map.putString("statusText", statusText);
+        } else {
+            map.putString("method", method);
+            map.putString("target", target);
+        }
+
+        // Add headers
+        WritableMap headerMap = Arguments.createMap();
+        for (Map.Entry<String, String> header : headers.entrySet())
+            headerMap.putString(header.getKey(), header.getValue());
+
+        map.putMap("headers", headerMap);
+        map.putBoolean("keepAlive", isKeepAlive());
+
+    }
+
+    // Reads the size line of the next chunk
+    private long nextChunkSize() throws Exception {
+
+        // Remove chunk extensions
+        String line = readLine();
+        int semicolon = line.indexOf(';');
+        if (semicolon != -1)
+            line = line.substring(0, semicolon);
+
+        // Parse hex size. Only allow plain hex digits, since parseLong also accepts signs.
+        line = line.trim();
+        if (!line.matches("[0-9a-fA-F]{1,15}"))
+            throw new Exception("Invalid HTTP chunk size.");
+        return Long.parseLong(line, 16);
+
+    }
+
+    // Reads header lines until an empty line
+    private void readHeaders() throws Exception {
+
+        int count = 0;
+        while (true) {
+
+            // Stop at the empty line
+            String line = readLine();
+            if (line.isEmpty())
+                break;
+
+            // Check limit
+            if (++count > MAX_HEADERS)
+                throw new Exception("Too many HTTP headers.");
+
+            // Split it
+            int colon = line.indexOf(':');
+            if (colon <= 0)
+                throw new Exception("Invalid HTTP header.");
+
+            // Store it, joining repeated ones
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim();
+            String existing = headers.get(name);
+            headers.put(name, existing == null ? value : existing + ", " + value);
+
+        }
+
+    }
+
+    // Reads a line ending in CRLF (or just LF), without the line ending
+    private String readLine() throws Exception {
+
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (true) {
+
+            // Read byte
+            int b = input.read();
+            if (b == -1)
+                throw new Exception("Socket closed before all data could be read.");
+
+            // Stop at the end of the line
+            if (b == '\n')
+                break;
+
+            // Check length
+            if (line.size() >= MAX_LINE_LENGTH)
+                throw new Exception("HTTP line too long.");
+
+            line.write(b);
+
+        }
+
+        // Remove CR
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+        return new String(bytes, 0, length, "ISO-8859-1");
+
+    }
+
+}
@@ -7,24 +7,44 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.modules.core.RCTNativeAppEventEmitter;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.DatagramPacket;
 import java.net.InetAddress;
 import java.net.MulticastSocket;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.commons.codec.binary.Base64;
 
 /**
@@ -34,11 +54,124 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
     // Socket info
     class SocketInfo {
+        int id = -1;
         Socket socket;
         ServerSocket server;
         MulticastSocket udpSocket;
-        ExecutorService readThread = Executors.newSingleThreadExecutor();
-        ExecutorService writeThread = Executors.newSingleThreadExecutor();
+        volatile UdpFilter udpFilter;
+        volatile boolean capture;
+
+        // Held while writing, so data from writes, pipes and broadcasts never interleaves partway through a chunk
+        final Object writeLock = new Object();
+
+        // Called once the socket is closed with socketClose
+        private final ArrayList<Runnable> closeListeners = new ArrayList<>();
+        private boolean closed = false;
+        final SerialExecutor readQueue = new SerialExecutor(workerPool);
+        final SerialExecutor writeQueue = new SerialExecutor(workerPool);
+
+        // Buffered input from the TCP socket. Every read uses this, so data buffered by one read isn't lost to the next.
+        private InputStream input;
+        private OutputStream output;
+
+        synchronized InputStream getInputStream() throws IOException {
+            if (input == null)
+                input = new BufferedInputStream(new CaptureInputStream(this, socket.getInputStream()), 1024*64);
+            return input;
+        }
+
+        synchronized OutputStream getOutputStream() throws IOException {
+            if (output == null)
+                output = new CaptureOutputStream(this, socket.getOutputStream());
+            return output;
+        }
+
+        // Adds a listener to call once the socket is closed. If it's already closed, it's called right away.
+        void addCloseListener(Runnable listener) {
+            synchronized (closeListeners) {
+                if (!closed) {
+                    closeListeners.add(listener);
+                    return;
+                }
+            }
+            listener.run();
+        }
+
+        void removeCloseListener(Runnable listener) {
+            synchronized (closeListeners) {
+                closeListeners.remove(listener);
+            }
+        }
+
+        // Calls all close listeners
+        void notifyClosed() {
+            ArrayList<Runnable> listeners;
+            synchronized (closeListeners) {
+                closed = true;
+                listeners = new ArrayList<>(closeListeners);
+                closeListeners.clear();
+            }
+            for (Runnable listener : listeners)
+                listener.run();
+        }
+    }
+
+    // Passes data read from a socket to the traffic capture, if it's on for that socket
+    class CaptureInputStream extends FilterInputStream {
+
+        final SocketInfo si;
+
+        CaptureInputStream(SocketInfo si, InputStream in) {
+            super(in);
+            this.si = si;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            TrafficCapture capture = trafficCapture;
+            if (b != -1 && si.capture && capture != null)
+                capture.record(si.id, 0, b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int amt = in.read(b, off, len);
+            TrafficCapture capture = trafficCapture;
+            if (amt > 0 && si.capture && capture != null)
+                capture.record(si.id, 0, b, off, amt);
+            return amt;
+        }
+
+    }
+
+    // Passes data written to a socket to the traffic capture, if it's on for that socket
+    class CaptureOutputStream extends FilterOutputStream {
+
+        final SocketInfo si;
+
+        CaptureOutputStream(SocketInfo si, OutputStream out) {
+            super(out);
+            this.si = si;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            TrafficCapture capture = trafficCapture;
+            if (si.capture && capture != null)
+                capture.record(si.id, TrafficCapture.FLAG_SENT, b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            TrafficCapture capture = trafficCapture;
+            if (si.capture && capture != null)
+                capture.record(si.id, TrafficCapture.FLAG_SENT, b, off, len);
+        }
+
     }
 
     // React context
@@ -48,9 +181,70 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
     private final HashMap<Integer, SocketInfo> socketInfo = new HashMap<>();
     private static int nextSocketID = 0;
 
+    // Named groups of socket IDs, for broadcasting
+    private final HashMap<String, LinkedHashSet<Integer>> socketGroups = new HashMap<>();
+
+    // Shared worker pool limits. Every pending blocking operation (a read, accept, connect or a write waiting on the
+    // remote side) holds one thread until it completes. Tasks are handed straight to a thread and never queued
+    // behind blocked ones, so once all threads are busy new operations fail with "pool-exhausted" instead of
+    // hanging. Idle threads are released after a while.
+    private static final int POOL_MAX_THREADS = 256;
+    private static final int POOL_KEEP_ALIVE_SECONDS = 30;
+
+    // Runs all blocking work for every socket
+    private final ThreadPoolExecutor workerPool;
+
+    // Number of operations refused because every thread was busy
+    private final AtomicLong rejectedTaskCount = new AtomicLong();
+
+    // Runs timeouts. Kept separate from the worker pool, so timeouts still fire when every worker is busy.
+    private final ScheduledThreadPoolExecutor timer;
+
+    // Maximum number of broadcast writes waiting behind a socket's current write. Beyond this, broadcasts to that
+    // socket fail instead of queueing more data for a client which isn't keeping up.
+    private static final int BROADCAST_MAX_QUEUED = 16;
+
+    // Traffic capture ring, if capturing
+    private volatile TrafficCapture trafficCapture = null;
+
+    // The most recent traffic capture ring, which may have been stopped. Kept so it can still be exported.
+    private volatile TrafficCapture lastCapture = null;
+
     public RNNetworkStackModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+
+        // Create worker pool
+        final AtomicInteger threadCount = new AtomicInteger();
+        workerPool = new ThreadPoolExecutor(0, POOL_MAX_THREADS,
+                POOL_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "RNNetworkStack-" + threadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        rejectedTaskCount.incrementAndGet();
+                        throw new RejectedExecutionException("All " + executor.getMaximumPoolSize() + " background threads are busy.");
+                    }
+                });
+
+        // Create timer thread
+        timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "RNNetworkStack-timer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
     }
 
     @Override
@@ -63,9 +257,41 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
         super.onCatalystInstanceDestroy();
 
         // Remove all current sockets
+        ArrayList<SocketInfo> sockets;
         synchronized (socketInfo) {
-            for (Integer key : socketInfo.keySet()) {
-                socketClose(key, null);
+            sockets = new ArrayList<>(socketInfo.values());
+            socketInfo.clear();
+        }
+
+        // Close them now, instead of in the background, so anything blocked on them gets released
+        for (SocketInfo si : sockets) {
+
+            // Reject pending operations
+            si.readQueue.close();
+            si.writeQueue.close();
+
+            // Close it
+            try {
+                closeSocket(si);
+            } catch (Exception e) {
+                // Ignore, we're shutting down anyway
+            }
+
+        }
+
+        // Release all threads
+        workerPool.shutdownNow();
+        timer.shutdownNow();
+
+        // Stop capturing traffic
+        TrafficCapture capture = lastCapture;
+        trafficCapture = null;
+        lastCapture = null;
+        if (capture != null) {
+            try {
+                capture.close();
+            } catch (Exception e) {
+                // Ignore, we're shutting down anyway
             }
         }
 
@@ -74,11 +300,8 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
     // Connects to a remote socket
     @ReactMethod public void tcpConnect(final String host, final int port, final Promise promise) {
 
-        // Create socket info
-        final SocketInfo si = new SocketInfo();
-
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        runInBackground(new Runnable() {
             @Override
             public void run() {
 
@@ -86,6 +309,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 try {
 
                     // Create socket
+                    SocketInfo si = new SocketInfo();
                     si.socket = new Socket(host, port);
 
                     // Store it and return ID
@@ -93,6 +317,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
                         // Store it
                         int id = nextSocketID++;
+                        si.id = id;
                         socketInfo.put(id, si);
 
                         // Create and return info
@@ -114,7 +339,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
@@ -125,13 +350,14 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                                      final String saveTo,
                                      final String outType,
                                      final String progressID,
+                                     final ReadableMap digestOpts,
                                      final Promise promise) {
 
         // Get fields
         final long maxLength = (long) maxLengthDbl;
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket is closed.");
             return;
@@ -141,7 +367,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
         final DeviceEventManagerModule.RCTDeviceEventEmitter emitter = reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
 
         // Start a background operation
-        si.readThread.execute(new Runnable() {
+        si.readQueue.execute(new Runnable() {
             @Override
             public void run() {
 
@@ -152,6 +378,10 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                     if (si.socket == null)
                         throw new Exception("This socket is not connected.");
 
+                    // Compute a digest of the data as it passes through, if requested. Check the options before
+                    // creating the output file.
+                    StreamDigest digest = StreamDigest.fromOptions(digestOpts);
+
                     // Create output stream, depending on where the user wants to send the data
                     OutputStream output;
                     if (saveTo != null && !saveTo.isEmpty()) {
@@ -167,144 +397,156 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
                     }
 
-                    // Check how the data should be read
-                    byte[] outputBuffer;
-                    if (maxLength > -1) {
+                    // Pass the data through the digest, if any
+                    OutputStream stream = digest != null ? digest.wrap(output) : output;
+                    try {
 
-                        // Read specified amount of data
-                        long lastUpdateTime = System.currentTimeMillis();
-                        long amountRead = 0;
-                        byte[] arr = new byte[1024*1024*4];
-                        while (amountRead < maxLength) {
+                        // Check how the data should be read
+                        if (maxLength > -1) {
 
-                            // Read some data
-                            int len = (int) Math.min(arr.length, maxLength - amountRead);
-                            len = si.socket.getInputStream().read(arr, 0, len);
-                            if (len == -1)
-                                throw new Exception("Socket closed before all data could be read.");
+                            // Read specified amount of data
+                            long lastUpdateTime = System.currentTimeMillis();
+                            long amountRead = 0;
+                            byte[] arr = new byte[1024*1024*4];
+                            while (amountRead < maxLength) {
 
-                            // Store it
-                            output.write(arr, 0, len);
-                            amountRead += len;
+                                // Read some data
+                                int len = (int) Math.min(arr.length, maxLength - amountRead);
+                                len = si.getInputStream().read(arr, 0, len);
+                                if (len == -1)
+                                    throw new Exception("Socket closed before all data could be read.");
+
+                                // Store it
+                                stream.write(arr, 0, len);
+                                amountRead += len;
+
+                                // Notify listener if needed
+                                if (progressID != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
+                                    lastUpdateTime = System.currentTimeMillis();
+                                    emitter.emit("net.read", progressID + "|" + amountRead);
+                                }
 
-                            // Notify listener if needed
-                            if (progressID != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
-                                lastUpdateTime = System.currentTimeMillis();
-                                emitter.emit("net.read", progressID + "|" + amountRead);
                             }
 
-                        }
+                        } else if (terminator != null && terminator.getType() != ReadableType.Null) {
 
-                    } else if (terminator != null && terminator.getType() != ReadableType.Null) {
+                            // User wants to read data until the specified terminator is found, convert terminator type to a byte array
+                            byte[] terminatorData;
+                            if (terminator.getType() == ReadableType.Number) {
 
-                        // User wants to read data until the specified terminator is found, convert terminator type to a byte array
-                        byte[] terminatorData;
-                        if (terminator.getType() == ReadableType.Number) {
+                                // Terminator is a byte
+                                int num = terminator.asInt();
+                                if (num > 255)
+                                    throw new Exception("The byte specified as the terminator was too big.");
 
-                            // Terminator is a byte
-                            int num = terminator.asInt();
-                            if (num > 255)
-                                throw new Exception("The byte specified as the terminator was too big.");
+                                terminatorData = new byte[1];
+                                terminatorData[0] = (byte) num;
 
-                            terminatorData = new byte[1];
-                            terminatorData[0] = (byte) num;
+                            } else if (terminator.getType() == ReadableType.String) {
 
-                        } else if (terminator.getType() == ReadableType.String) {
+                                // Terminator is a string, get UTF8 encoding
+                                terminatorData = terminator.asString().getBytes("UTF-8");
 
-                            // Terminator is a string, get UTF8 encoding
-                            terminatorData = terminator.asString().getBytes("UTF-8");
+                            } else {
 
-                        } else {
+                                // Unknown type!
+                                throw new Exception("Unknown data type for 'until' parameter. Please specify a string or a byte.");
 
-                            // Unknown type!
-                            throw new Exception("Unknown data type for 'until' parameter. Please specify a string or a byte.");
+                            }
 
-                        }
+                            // Ensure we have some bytes in the terminator data
+                            if (terminatorData.length == 0)
+                                throw new Exception("Terminator was empty!");
 
-                        // Ensure we have some bytes in the terminator data
-                        if (terminatorData.length == 0)
-                            throw new Exception("Terminator was empty!");
+                            // Read char by char until we have the desired terminator
+                            long amountRead = 0;
+                            int lastTerminatorMatch = 0;
+                            long lastUpdateTime = System.currentTimeMillis();
+                            while (true) {
 
-                        // Read char by char until we have the desired terminator
-                        long amountRead = 0;
-                        int lastTerminatorMatch = 0;
-                        long lastUpdateTime = System.currentTimeMillis();
-                        while (true) {
+                                // Read byte
+                                int b = si.getInputStream().read();
+                                if (b == -1)
+                                    throw new Exception("Socket closed before all data could be read.");
 
-                            // Read byte
-                            int b = si.socket.getInputStream().read();
-                            if (b == -1)
-                                throw new Exception("Socket closed before all data could be read.");
+                                // Check if this one matches our next desired terminator byte
+                                if (terminatorData[lastTerminatorMatch] == b) {
 
-                            // Check if this one matches our next desired terminator byte
-                            if (terminatorData[lastTerminatorMatch] == b) {
+                                    // It does match, increase terminator index
+                                    lastTerminatorMatch += 1;
+                                    amountRead += 1;
 
-                                // It does match, increase terminator index
-                                lastTerminatorMatch += 1;
-                                amountRead += 1;
+                                    // If all terminator bytes have been matched, stop
+                                    if (lastTerminatorMatch >= terminatorData.length)
+                                        break;
 
-                                // If all terminator bytes have been matched, stop
-                                if (lastTerminatorMatch >= terminatorData.length)
-                                    break;
+                                } else {
 
-                            } else {
+                                    // No match, put this char into main buffer
+                                    stream.write(b);
+                                    amountRead += 1;
 
-                                // No match, put this char into main buffer
-                                output.write(b);
-                                amountRead += 1;
+                                    // Put any items we thought were part of the terminator, into the main buffer
+                                    for (int i = 0 ; i < lastTerminatorMatch ; i++)
+                                        stream.write(terminatorData[i]);
 
-                                // Put any items we thought were part of the terminator, into the main buffer
-                                for (int i = 0 ; i < lastTerminatorMatch ; i++)
-                                    output.write(terminatorData[i]);
+                                    // Reset count
+                                    amountRead += lastTerminatorMatch;
+                                    lastTerminatorMatch = 0;
 
-                                // Reset count
-                                amountRead += lastTerminatorMatch;
-                                lastTerminatorMatch = 0;
+                                }
 
-                            }
+                                // Notify listener if needed
+                                if (progressID != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
+                                    lastUpdateTime = System.currentTimeMillis();
+                                    emitter.emit("net.read", progressID + "|" + amountRead);
+                                }
 
-                            // Notify listener if needed
-                            if (progressID != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
-                                lastUpdateTime = System.currentTimeMillis();
-                                emitter.emit("net.read", progressID + "|" + amountRead);
                             }
 
-                        }
+                        } else {
 
-                    } else {
+                            // User didn't provide an end point for our data fetch, just fetch the first data that comes
+                            byte[] bfr = new byte[1024*512];
+                            int len = si.getInputStream().read(bfr);
+                            if (len == -1)
+                                throw new Exception("Socket closed before any data could be read.");
+
+                            // Put it into the output buffer
+                            stream.write(bfr, 0, len);
+
+                        }
 
-                        // User didn't provide an end point for our data fetch, just fetch the first data that comes
-                        byte[] bfr = new byte[1024*512];
-                        int len = si.socket.getInputStream().read(bfr);
-                        if (len == -1)
-                            throw new Exception("Socket closed before any data could be read.");
+                    } finally {
 
-                        // Put it into the output buffer
-                        outputBuffer = new byte[len];
-                        System.arraycopy(bfr, 0, outputBuffer, 0, len);
+                        // Finish writing the file
+                        stream.close();
 
                     }
 
+                    // Check digest
+                    if (digest != null)
+                        digest.verify();
+
                     // Check how the user wants the output
+                    String result;
                     if (outType.equals("skip") || outType.equals("save")) {
 
-                        // Done
-                        promise.resolve(null);
-                        return;
+                        // Nothing to return
+                        result = null;
 
                     } else if (outType.equals("utf8")) {
 
                         // User wants UTF-8 encoded text
                         ByteArrayOutputStream buffer = (ByteArrayOutputStream) output;
-                        promise.resolve(buffer.toString("UTF-8"));
+                        result = buffer.toString("UTF-8");
 
                     } else if (outType.equals("buffer") || outType.equals("base64")) {
 
                         // User wants Base64 encoded text
                         ByteArrayOutputStream buffer = (ByteArrayOutputStream) output;
                         byte[] bytes = buffer.toByteArray();
-                        String base64str = new String(Base64.encodeBase64(bytes));
-                        promise.resolve(base64str);
+                        result = new String(Base64.encodeBase64(bytes));
 
                     } else {
 
@@ -313,6 +555,16 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
                     }
 
+                    // Done. If a digest was requested, return it along with the data.
+                    if (digest == null) {
+                        promise.resolve(result);
+                    } else {
+                        WritableMap map = Arguments.createMap();
+                        map.putString("data", result);
+                        map.putString("digest", digest.getHex());
+                        promise.resolve(map);
+                    }
+
                 } catch (Exception e) {
 
                     // Report error
@@ -321,19 +573,21 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
-    // Writes data to the socket
-    @ReactMethod public void tcpWrite(final int id,
-                                      final Dynamic data,
-                                      final String dataType,
-                                      final String progressID,
-                                      final Promise promise) {
+    // Reads one complete HTTP/1.1 request or response from the socket
+    @ReactMethod public void tcpReadHttp(final int id,
+                                         final String requestMethod,
+                                         final String saveTo,
+                                         final String outType,
+                                         final String progressID,
+                                         final ReadableMap digestOpts,
+                                         final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket is closed.");
             return;
@@ -343,76 +597,103 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
         final DeviceEventManagerModule.RCTDeviceEventEmitter emitter = reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
 
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        si.readQueue.execute(new Runnable() {
             @Override
             public void run() {
 
                 // Catch errors
                 try {
 
-                    // Check data type
-                    if (dataType.equals("file")) {
+                    // Check if still connected
+                    if (si.socket == null)
+                        throw new Exception("This socket is not connected.");
+
+                    // Compute a digest of the body as it passes through, if requested. This and the output are set up
+                    // before reading anything, so a failure here doesn't leave half a message on the socket.
+                    StreamDigest digest = StreamDigest.fromOptions(digestOpts);
+
+                    // Create output stream, depending on where the user wants to send the body
+                    OutputStream output;
+                    if (saveTo != null && !saveTo.isEmpty()) {
+
+                        // User wants to write the body to a file
+                        output = new FileOutputStream(new File(saveTo));
+
+                    } else if (outType.equals("skip")) {
+
+                        // User doesn't want the body, discard it
+                        output = new OutputStream() {
+                            @Override public void write(int b) {}
+                            @Override public void write(byte[] b, int off, int len) {}
+                        };
 
-                        // User wants to stream the specified file. Open it now.
-                        File file = new File(data.asString());
-                        FileInputStream fis = new FileInputStream(file);
+                    } else {
+
+                        // User wants the body
+                        output = new ByteArrayOutputStream();
+
+                    }
 
-                        // Start streaming it
-                        long lastUpdateTime = System.currentTimeMillis();
-                        long amountRead = 0;
-                        byte[] buffer = new byte[1024*512];
-                        while (true) {
+                    // Pass the body through the digest, if any
+                    OutputStream stream = digest != null ? digest.wrap(output) : output;
 
-                            // Read some data
-                            int amt = fis.read(buffer);
-                            if (amt == -1)
-                                break;
+                    // Read the message
+                    HttpMessageReader reader = new HttpMessageReader(si.getInputStream());
+                    long bodyLength;
+                    try {
 
-                            // Write to socket
-                            si.socket.getOutputStream().write(buffer, 0, amt);
-                            amountRead += amt;
+                        // Read start line and headers
+                        reader.readHead(requestMethod);
 
-                            // Notify listener if needed
-                            if (progressID != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
-                                lastUpdateTime = System.currentTimeMillis();
-                                emitter.emit("net.write", progressID + "|" + amountRead);
+                        // Read body
+                        bodyLength = reader.readBody(stream, progressID == null || progressID.isEmpty() ? null : new HttpMessageReader.ProgressListener() {
+                            @Override
+                            public void onProgress(long amountRead) {
+                                emitter.emit("net.read", progressID + "|" + amountRead);
                             }
+                        });
 
-                        }
+                    } finally {
+                        stream.close();
+                    }
 
-                    } else if (dataType.equals("byte")) {
+                    // Check digest
+                    if (digest != null)
+                        digest.verify();
 
-                        // User wants to send a single byte, check byte
-                        int num = data.asInt();
-                        if (num > 255)
-                            throw new Exception("The byte specified was too big.");
+                    // Create output info. This is done after the body, since chunked trailers add more headers.
+                    WritableMap map = Arguments.createMap();
+                    reader.putHead(map);
+                    map.putDouble("bodyLength", bodyLength);
+                    if (digest != null)
+                        map.putString("digest", digest.getHex());
 
-                        // Send it
-                        si.socket.getOutputStream().write(num);
+                    // Check how the user wants the body
+                    if (outType.equals("skip") || outType.equals("save")) {
 
-                    } else if (dataType.equals("utf8")) {
+                        // Nothing to add
 
-                        // User wants to send a string, convert to UTF-8 and send it
-                        byte[] bytes = data.asString().getBytes("UTF-8");
-                        si.socket.getOutputStream().write(bytes);
+                    } else if (outType.equals("utf8")) {
 
-                    } else if (dataType.equals("base64")) {
+                        // User wants UTF-8 encoded text
+                        ByteArrayOutputStream buffer = (ByteArrayOutputStream) output;
+                        map.putString("body", buffer.toString("UTF-8"));
 
-                        // User wants to send a binary payload that's in base64 format. Convert to data
-                        byte[] bytes = Base64.decodeBase64(data.asString().getBytes("UTF-8"));
+                    } else if (outType.equals("buffer") || outType.equals("base64")) {
 
-                        // Write it
-                        si.socket.getOutputStream().write(bytes);
+                        // User wants Base64 encoded text
+                        ByteArrayOutputStream buffer = (ByteArrayOutputStream) output;
+                        map.putString("body", new String(Base64.encodeBase64(buffer.toByteArray())));
 
                     } else {
 
-                        // Unknown data type!
-                        throw new Exception("Unknown data type specified.");
+                        // Can't figure out what type of data the user wants
+                        throw new Exception("Unknown encoding type requested.");
 
                     }
 
                     // Done
-                    promise.resolve(null);
+                    promise.resolve(map);
 
                 } catch (Exception e) {
 
@@ -422,72 +703,284 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
-    // Closes the socket
-    @ReactMethod public void socketClose(final int id,
-                                         final Promise promise) {
+    // Writes data to the socket
+    @ReactMethod public void tcpWrite(final int id,
+                                      final Dynamic data,
+                                      final String dataType,
+                                      final String progressID,
+                                      final ReadableMap digestOpts,
+                                      final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
-            if (promise != null)
-                promise.resolve(null);
+            promise.reject("socket-closed", "This socket is closed.");
             return;
         }
 
+        // Get event emitter
+        final DeviceEventManagerModule.RCTDeviceEventEmitter emitter = reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
+
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        si.writeQueue.execute(new Runnable() {
             @Override
             public void run() {
 
                 // Catch errors
                 try {
 
-                    // Close socket
-                    if (si.socket != null && !si.socket.isClosed())
-                        si.socket.close();
+                    // Compute a digest of the data as it passes through, if requested
+                    StreamDigest digest = StreamDigest.fromOptions(digestOpts);
+                    OutputStream output = digest != null ? digest.wrap(si.getOutputStream()) : si.getOutputStream();
 
-                    // Close server socket
-                    if (si.server != null && !si.server.isClosed())
-                        si.server.close();
+                    // Write the data. Hold the write lock throughout, so pipes and broadcasts to this socket can't
+                    // land in the middle of it.
+                    synchronized (si.writeLock) {
 
-                    // Close UDP socket
-                    if (si.udpSocket != null && !si.udpSocket.isClosed())
-                        si.udpSocket.close();
+                        // Check data type
+                        if (dataType.equals("file")) {
+
+                            // User wants to stream the specified file. Open it now.
+                            File file = new File(data.asString());
+                            FileInputStream fis = new FileInputStream(file);
+
+                            try {
+
+                                // Start streaming it
+                                long lastUpdateTime = System.currentTimeMillis();
+                                long amountRead = 0;
+                                byte[] buffer = new byte[1024*512];
+                                while (true) {
+
+                                    // Read some data
+                                    int amt = fis.read(buffer);
+                                    if (amt == -1)
+                                        break;
+
+                                    // Write to socket
+                                    output.write(buffer, 0, amt);
+                                    amountRead += amt;
+
+                                    // Notify listener if needed
+                                    if (progressID != null && lastUpdateTime + 500 < System.currentTimeMillis()) {
+                                        lastUpdateTime = System.currentTimeMillis();
+                                        emitter.emit("net.write", progressID + "|" + amountRead);
+                                    }
+
+                                }
+
+                            } finally {
+
+                                // Done with the file
+                                fis.close();
+
+                            }
+
+                        } else if (dataType.equals("byte")) {
+
+                            // User wants to send a single byte, check byte
+                            int num = data.asInt();
+                            if (num > 255)
+                                throw new Exception("The byte specified was too big.");
+
+                            // Send it
+                            output.write(num);
+
+                        } else if (dataType.equals("utf8")) {
+
+                            // User wants to send a string, convert to UTF-8 and send it
+                            byte[] bytes = data.asString().getBytes("UTF-8");
+                            output.write(bytes);
+
+                        } else if (dataType.equals("base64")) {
+
+                            // User wants to send a binary payload that's in base64 format. Convert to data
+                            byte[] bytes = Base64.decodeBase64(data.asString().getBytes("UTF-8"));
+
+                            // Write it
+                            output.write(bytes);
+
+                        } else {
+
+                            // Unknown data type!
+                            throw new Exception("Unknown data type specified.");
+
+                        }
 
-                    // Remove it
-                    synchronized (socketInfo) {
-                        socketInfo.remove(id);
                     }
 
+                    // Check digest
+                    if (digest != null)
+                        digest.verify();
+
                     // Done
-                    if (promise != null)
-                        promise.resolve(null);
+                    promise.resolve(digest != null ? digest.getHex() : null);
 
                 } catch (Exception e) {
 
                     // Report error
-                    if (promise != null)
-                        promise.reject(e);
+                    promise.reject(e);
 
                 }
 
             }
-        });
+        }, promise);
+
+    }
+
+    // Closes the socket
+    @ReactMethod public void socketClose(final int id,
+                                         final Promise promise) {
+
+        // Remove it, so no new operations can be started on it
+        final SocketInfo si;
+        synchronized (socketInfo) {
+            si = socketInfo.remove(id);
+        }
+
+        // Remove it from all groups
+        synchronized (socketGroups) {
+            Iterator<LinkedHashSet<Integer>> it = socketGroups.values().iterator();
+            while (it.hasNext()) {
+                LinkedHashSet<Integer> group = it.next();
+                group.remove(id);
+                if (group.isEmpty())
+                    it.remove();
+            }
+        }
+
+        // Stop if already closed
+        if (si == null) {
+            if (promise != null)
+                promise.resolve(null);
+            return;
+        }
+
+        // Reject any operations which haven't started yet
+        si.readQueue.close();
+        si.writeQueue.close();
+
+        // Catch errors
+        try {
+
+            // Close it right away. This doesn't block, and it's what releases a read or write that's stuck waiting
+            // on the remote side, so it must not wait for a background thread.
+            closeSocket(si);
+
+            // Done
+            if (promise != null)
+                promise.resolve(null);
+
+        } catch (Exception e) {
+
+            // Report error
+            if (promise != null)
+                promise.reject(e);
+
+        }
+
+    }
+
+    // Closes the underlying sockets. Any operation blocked on them will fail with an exception.
+    private void closeSocket(SocketInfo si) throws IOException {
+
+        // Close socket
+        if (si.socket != null && !si.socket.isClosed())
+            si.socket.close();
+
+        // Close server socket
+        if (si.server != null && !si.server.isClosed())
+            si.server.close();
+
+        // Close UDP socket
+        if (si.udpSocket != null && !si.udpSocket.isClosed())
+            si.udpSocket.close();
+
+        // Let anything waiting on other sockets for this one know
+        si.notifyClosed();
+
+    }
+
+    // Gets info about an open socket, or null if it's closed
+    private SocketInfo getSocketInfo(int id) {
+        synchronized (socketInfo) {
+            return socketInfo.get(id);
+        }
+    }
+
+    // Runs an operation on the shared worker pool. If the pool can't take it, the promise is rejected instead.
+    private void runInBackground(Runnable runnable, Promise promise) {
+
+        // Catch errors
+        try {
+
+            // Submit it
+            workerPool.execute(runnable);
+
+        } catch (RejectedExecutionException e) {
+
+            // Pool is full or has been shut down
+            if (promise != null)
+                promise.reject("pool-exhausted", "No background threads are available to run this operation.", e);
+
+        }
+
+    }
+
+    // Returns info about the shared worker pool
+    @ReactMethod public void getPoolStats(final Promise promise) {
+
+        // Count sockets and their queued operations
+        int sockets = 0;
+        int socketQueueSize = 0;
+        synchronized (socketInfo) {
+            for (SocketInfo si : socketInfo.values()) {
+                sockets += 1;
+                socketQueueSize += si.readQueue.getQueueSize() + si.writeQueue.getQueueSize();
+            }
+        }
+
+        // Create and return info
+        WritableMap map = Arguments.createMap();
+        map.putInt("sockets", sockets);
+        map.putInt("socketQueueSize", socketQueueSize);
+        map.putInt("poolSize", workerPool.getPoolSize());
+        map.putInt("activeCount", workerPool.getActiveCount());
+        map.putInt("largestPoolSize", workerPool.getLargestPoolSize());
+        map.putInt("maxPoolSize", workerPool.getMaximumPoolSize());
+        map.putDouble("rejectedTaskCount", rejectedTaskCount.get());
+        map.putDouble("taskCount", workerPool.getTaskCount());
+        map.putDouble("completedTaskCount", workerPool.getCompletedTaskCount());
+        promise.resolve(map);
+
+    }
+
+    // Sets the maximum number of threads in the shared worker pool
+    @ReactMethod public void setPoolSize(final int maxThreads, final Promise promise) {
+
+        // Check size
+        if (maxThreads < 1) {
+            promise.reject("invalid-size", "The pool must have at least one thread.");
+            return;
+        }
+
+        // Set it. Threads are only created when needed, so there's no core size to keep in step.
+        workerPool.setMaximumPoolSize(maxThreads);
+
+        // Done
+        promise.resolve(null);
 
     }
 
     // Create a new server socket that listens on the specified port
     @ReactMethod public void tcpListen(final String host, final int port, final Promise promise) {
 
-        // Create socket info
-        final SocketInfo si = new SocketInfo();
-
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        runInBackground(new Runnable() {
             @Override
             public void run() {
 
@@ -495,6 +988,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 try {
 
                     // Create socket
+                    SocketInfo si = new SocketInfo();
                     si.server = new ServerSocket(port, 10, InetAddress.getByName(host));
 
                     // Store it and return ID
@@ -502,6 +996,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
                         // Store it
                         int id = nextSocketID++;
+                        si.id = id;
                         socketInfo.put(id, si);
 
                         // Create and return info
@@ -521,7 +1016,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
@@ -529,14 +1024,14 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
     @ReactMethod public void tcpAccept(final int id, final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket has been closed.");
             return;
         }
 
         // Start a background operation
-        si.readThread.execute(new Runnable() {
+        si.readQueue.execute(new Runnable() {
             @Override
             public void run() {
 
@@ -556,6 +1051,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
                         // Store it
                         int id = nextSocketID++;
+                        si2.id = id;
                         socketInfo.put(id, si2);
 
                         // Create and return info
@@ -577,39 +1073,623 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
-    // Create a new UDP socket that binds to the specified port
-    @ReactMethod public void udpBind(final int port,
-                                     final boolean broadcast,
-                                     final boolean reuse,
-                                     final Promise promise) {
+    // State of a running pipe between two endpoints
+    class Pipe {
 
-        // Create socket info
-        final SocketInfo si = new SocketInfo();
+        final String progressID;
+        final Promise promise;
+        final DeviceEventManagerModule.RCTDeviceEventEmitter emitter;
 
-        // Start a background operation
-        si.writeThread.execute(new Runnable() {
-            @Override
-            public void run() {
+        // Bytes moved in each direction
+        final AtomicLong forwardBytes = new AtomicLong();
+        final AtomicLong backwardBytes = new AtomicLong();
 
-                // Catch errors
-                try {
+        // Number of directions still running
+        final AtomicInteger running;
 
-                    // Create socket
-                    si.udpSocket = new MulticastSocket(port);
+        // Last time a progress event was sent
+        final AtomicLong lastUpdateTime = new AtomicLong(System.currentTimeMillis());
 
-                    // Set params
-                    if (broadcast) si.udpSocket.setBroadcast(true);
-                    if (reuse) si.udpSocket.setReuseAddress(true);
+        // The first error which stopped a direction, if any
+        volatile String error = null;
 
-                    // Store it and return ID
-                    synchronized (socketInfo) {
+        // Called once all directions have stopped
+        Runnable onFinished = null;
 
-                        // Store it
+        Pipe(int directions, String progressID, Promise promise) {
+            this.running = new AtomicInteger(directions);
+            this.progressID = progressID;
+            this.promise = promise;
+            this.emitter = reactContext.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class);
+        }
+
+        // Moves data from the input to the output until the input ends. Writes block while the destination is
+        // full, so we never read faster than the destination can take it. If the output is a socket, each write
+        // holds its write lock so other writes to it can't land partway through a chunk.
+        void pump(InputStream input, OutputStream output, Object writeLock, AtomicLong counter) throws IOException {
+
+            byte[] buffer = new byte[1024*64];
+            while (true) {
+
+                // Read some data
+                int amt = input.read(buffer);
+                if (amt == -1)
+                    break;
+
+                // Write it
+                if (writeLock != null) {
+                    synchronized (writeLock) {
+                        output.write(buffer, 0, amt);
+                    }
+                } else {
+                    output.write(buffer, 0, amt);
+                }
+                counter.addAndGet(amt);
+
+                // Notify listener if needed
+                long lastUpdate = lastUpdateTime.get();
+                if (progressID != null && !progressID.isEmpty() && lastUpdate + 500 < System.currentTimeMillis()
+                        && lastUpdateTime.compareAndSet(lastUpdate, System.currentTimeMillis()))
+                    emitter.emit("net.pipe", progressID + "|" + forwardBytes.get() + "|" + backwardBytes.get());
+
+            }
+
+        }
+
+        // Called when a direction has stopped. Resolves once all directions have stopped.
+        void finish(Exception e) {
+
+            // Store error
+            if (e != null && error == null)
+                error = e.getMessage() == null ? e.toString() : e.getMessage();
+
+            // Stop if other directions are still running
+            if (running.decrementAndGet() > 0)
+                return;
+
+            // Clean up
+            if (onFinished != null)
+                onFinished.run();
+
+            // Create and return info
+            WritableMap map = Arguments.createMap();
+            map.putDouble("forwardBytes", forwardBytes.get());
+            map.putDouble("backwardBytes", backwardBytes.get());
+            if (error != null)
+                map.putString("error", error);
+            promise.resolve(map);
+
+        }
+
+    }
+
+    // Moves data directly between two sockets, or between a socket and a file, without passing it through JS
+    @ReactMethod public void pipe(final Dynamic src,
+                                  final Dynamic dst,
+                                  final boolean bidirectional,
+                                  final String progressID,
+                                  final Promise promise) {
+
+        // Get endpoints. Numbers are socket IDs, strings are file paths.
+        final SocketInfo srcInfo = src.getType() == ReadableType.Number ? getSocketInfo(src.asInt()) : null;
+        final SocketInfo dstInfo = dst.getType() == ReadableType.Number ? getSocketInfo(dst.asInt()) : null;
+        final String srcFile = src.getType() == ReadableType.String ? src.asString() : null;
+        final String dstFile = dst.getType() == ReadableType.String ? dst.asString() : null;
+
+        // Check endpoints
+        if ((srcInfo == null && srcFile == null) || (dstInfo == null && dstFile == null)) {
+            promise.reject("socket-closed", "This socket is closed.");
+            return;
+        } else if (srcInfo == null && dstInfo == null) {
+            promise.reject("invalid-pipe", "At least one side of a pipe must be a socket.");
+            return;
+        } else if (bidirectional && (srcInfo == null || dstInfo == null)) {
+            promise.reject("invalid-pipe", "Both sides of a bidirectional pipe must be sockets.");
+            return;
+        }
+
+        // Create pipe
+        final Pipe pipe = new Pipe(bidirectional ? 2 : 1, progressID, promise);
+
+        // If the destination socket gets closed, stop waiting for data from the source socket. This is set up
+        // before anything starts, so finish() always has a listener to remove.
+        if (srcInfo != null && dstInfo != null) {
+            final Runnable onDestinationClosed = new Runnable() {
+                @Override
+                public void run() {
+                    shutdownInput(srcInfo);
+                }
+            };
+            pipe.onFinished = new Runnable() {
+                @Override
+                public void run() {
+                    dstInfo.removeCloseListener(onDestinationClosed);
+                }
+            };
+            dstInfo.addCloseListener(onDestinationClosed);
+        }
+
+        // Reading from a socket runs on its read queue. Reading from a file runs on the destination's write queue.
+        SerialExecutor forwardQueue = srcInfo != null ? srcInfo.readQueue : dstInfo.writeQueue;
+        forwardQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                Exception error = null;
+                try {
+
+                    // Check if still connected
+                    if ((srcInfo != null && srcInfo.socket == null) || (dstInfo != null && dstInfo.socket == null))
+                        throw new Exception("This socket is not connected.");
+
+                    // Open streams
+                    InputStream input = srcInfo != null ? srcInfo.getInputStream() : new FileInputStream(new File(srcFile));
+                    OutputStream output = dstInfo != null ? dstInfo.getOutputStream() : new FileOutputStream(new File(dstFile));
+
+                    // Move data
+                    try {
+                        pipe.pump(input, output, dstInfo != null ? dstInfo.writeLock : null, pipe.forwardBytes);
+                    } finally {
+                        if (srcInfo == null) input.close();
+                        if (dstInfo == null) output.close();
+                    }
+
+                    // Let the destination socket know there's no more data coming from the source socket
+                    if (srcInfo != null && dstInfo != null && !dstInfo.socket.isClosed())
+                        dstInfo.socket.shutdownOutput();
+
+                } catch (Exception e) {
+
+                    // Store error
+                    error = e;
+
+                }
+
+                // Stop the other direction too, since one side has closed
+                if (bidirectional)
+                    shutdownInput(dstInfo);
+
+                // Done
+                pipe.finish(error);
+
+            }
+        }, new SerialExecutor.RejectionHandler() {
+            @Override
+            public void onRejected(String code, String message, Exception e) {
+
+                // This direction never started, stop the other one too
+                if (bidirectional)
+                    shutdownInput(dstInfo);
+
+                pipe.finish(new Exception(message, e));
+
+            }
+        });
+
+        // Stop if one way only
+        if (!bidirectional)
+            return;
+
+        // Start the backward direction
+        dstInfo.readQueue.execute(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                Exception error = null;
+                try {
+
+                    // Check if still connected
+                    if (srcInfo.socket == null || dstInfo.socket == null)
+                        throw new Exception("This socket is not connected.");
+
+                    // Move data
+                    pipe.pump(dstInfo.getInputStream(), srcInfo.getOutputStream(), srcInfo.writeLock, pipe.backwardBytes);
+
+                    // Let the source socket know there's no more data coming
+                    if (!srcInfo.socket.isClosed())
+                        srcInfo.socket.shutdownOutput();
+
+                } catch (Exception e) {
+
+                    // Store error
+                    error = e;
+
+                }
+
+                // Stop the forward direction too, since one side has closed
+                shutdownInput(srcInfo);
+
+                // Done
+                pipe.finish(error);
+
+            }
+        }, new SerialExecutor.RejectionHandler() {
+            @Override
+            public void onRejected(String code, String message, Exception e) {
+
+                // This direction never started, stop the forward one too
+                shutdownInput(srcInfo);
+                pipe.finish(new Exception(message, e));
+
+            }
+        });
+
+    }
+
+    // Wakes up anything blocked reading from the socket, by making it see the end of the stream
+    private void shutdownInput(SocketInfo si) {
+
+        try {
+            if (si != null && si.socket != null && !si.socket.isClosed())
+                si.socket.shutdownInput();
+        } catch (IOException e) {
+            // Already shut down
+        }
+
+    }
+
+    // Adds a socket to a named group
+    @ReactMethod public void socketGroupAdd(final String name,
+                                            final int id,
+                                            final Promise promise) {
+
+        // Check socket
+        if (getSocketInfo(id) == null) {
+            promise.reject("socket-closed", "This socket has been closed.");
+            return;
+        }
+
+        // Add it
+        synchronized (socketGroups) {
+            LinkedHashSet<Integer> group = socketGroups.get(name);
+            if (group == null) {
+                group = new LinkedHashSet<>();
+                socketGroups.put(name, group);
+            }
+            group.add(id);
+        }
+
+        // Done
+        promise.resolve(null);
+
+    }
+
+    // Removes a socket from a named group
+    @ReactMethod public void socketGroupRemove(final String name,
+                                               final int id,
+                                               final Promise promise) {
+
+        // Remove it
+        synchronized (socketGroups) {
+            LinkedHashSet<Integer> group = socketGroups.get(name);
+            if (group != null) {
+                group.remove(id);
+                if (group.isEmpty())
+                    socketGroups.remove(name);
+            }
+        }
+
+        // Done
+        promise.resolve(null);
+
+    }
+
+    // State of a running broadcast
+    class Broadcast {
+
+        final Promise promise;
+        final int[] ids;
+
+        // Status of each socket's write. Null while still pending.
+        final String[] status;
+        final String[] errors;
+
+        // True for writes which were reported as pending without waiting for them
+        final boolean[] detached;
+
+        // Number of writes still being waited for, and whether the promise has been resolved
+        final AtomicInteger remaining;
+        final AtomicBoolean resolved = new AtomicBoolean(false);
+
+        // Resolves early once the timeout is reached, if there's a timeout
+        ScheduledFuture<?> timeout = null;
+
+        Broadcast(int[] ids, Promise promise) {
+            this.ids = ids;
+            this.promise = promise;
+            this.status = new String[ids.length];
+            this.errors = new String[ids.length];
+            this.detached = new boolean[ids.length];
+            this.remaining = new AtomicInteger(ids.length);
+        }
+
+        // Called when a socket's write has finished
+        void finish(int index, Exception e) {
+
+            // Store result. Writes which were already reported as pending are left that way.
+            synchronized (this) {
+                if (detached[index])
+                    return;
+
+                status[index] = e == null ? "sent" : "failed";
+                if (e != null)
+                    errors[index] = e.getMessage() == null ? e.toString() : e.getMessage();
+            }
+
+            // Resolve if this was the last one
+            if (remaining.decrementAndGet() == 0)
+                resolve();
+
+        }
+
+        // Stops waiting for a socket's write, which is reported as pending. Does nothing if it has already finished.
+        void detach(int index) {
+
+            synchronized (this) {
+                if (status[index] != null)
+                    return;
+
+                detached[index] = true;
+            }
+
+            // Resolve if this was the last one
+            if (remaining.decrementAndGet() == 0)
+                resolve();
+
+        }
+
+        // Returns the results so far. Writes still running are reported as pending.
+        synchronized void resolve() {
+
+            // Only once
+            if (!resolved.compareAndSet(false, true))
+                return;
+
+            // Stop the timeout
+            if (timeout != null)
+                timeout.cancel(false);
+
+            // Create info for each socket
+            int sent = 0, failed = 0, pending = 0;
+            WritableArray results = Arguments.createArray();
+            for (int i = 0 ; i < ids.length ; i++) {
+
+                WritableMap result = Arguments.createMap();
+                result.putInt("id", ids[i]);
+                result.putString("status", status[i] == null ? "pending" : status[i]);
+                if (errors[i] != null)
+                    result.putString("error", errors[i]);
+                results.pushMap(result);
+
+                if (status[i] == null) pending += 1;
+                else if (status[i].equals("sent")) sent += 1;
+                else failed += 1;
+
+            }
+
+            // Create and return info
+            WritableMap map = Arguments.createMap();
+            map.putInt("sent", sent);
+            map.putInt("failed", failed);
+            map.putInt("pending", pending);
+            map.putArray("results", results);
+            promise.resolve(map);
+
+        }
+
+    }
+
+    // Writes the same data to many sockets. The data is decoded once, and each socket writes it on its own write
+    // queue, so a slow socket doesn't hold up the others.
+    @ReactMethod public void tcpBroadcast(final Dynamic target,
+                                          final Dynamic data,
+                                          final String dataType,
+                                          final double timeout,
+                                          final Promise promise) {
+
+        // Catch errors
+        final byte[] bytes;
+        final int[] ids;
+        try {
+
+            // Decode the data once
+            if (dataType.equals("byte")) {
+
+                // User wants to send a single byte, check byte
+                int num = data.asInt();
+                if (num > 255)
+                    throw new Exception("The byte specified was too big.");
+
+                bytes = new byte[] { (byte) num };
+
+            } else if (dataType.equals("utf8")) {
+
+                // User wants to send a string
+                bytes = data.asString().getBytes("UTF-8");
+
+            } else if (dataType.equals("base64")) {
+
+                // User wants to send a binary payload that's in base64 format
+                bytes = Base64.decodeBase64(data.asString().getBytes("UTF-8"));
+
+            } else {
+
+                // Unknown data type!
+                throw new Exception("Unknown data type specified.");
+
+            }
+
+            // Get target sockets. Strings are group names, arrays are socket IDs.
+            if (target.getType() == ReadableType.String) {
+
+                synchronized (socketGroups) {
+                    LinkedHashSet<Integer> group = socketGroups.get(target.asString());
+                    ids = new int[group == null ? 0 : group.size()];
+                    int i = 0;
+                    if (group != null)
+                        for (Integer id : group)
+                            ids[i++] = id;
+                }
+
+            } else if (target.getType() == ReadableType.Array) {
+
+                ReadableArray arr = target.asArray();
+                ids = new int[arr.size()];
+                for (int i = 0 ; i < ids.length ; i++)
+                    ids[i] = arr.getInt(i);
+
+            } else {
+
+                // Unknown type!
+                throw new Exception("Unknown target type. Please specify a group name or an array of socket IDs.");
+
+            }
+
+        } catch (Exception e) {
+
+            // Report error
+            promise.reject(e);
+            return;
+
+        }
+
+        // Create broadcast
+        final Broadcast broadcast = new Broadcast(ids, promise);
+        if (ids.length == 0) {
+            broadcast.resolve();
+            return;
+        }
+
+        // Start a write on each socket
+        for (int i = 0 ; i < ids.length ; i++) {
+
+            // Get socket info
+            final int index = i;
+            final SocketInfo si = getSocketInfo(ids[i]);
+            if (si == null) {
+                broadcast.finish(index, new Exception("This socket is closed."));
+                continue;
+            }
+
+            // Don't queue more data for a socket which is too far behind
+            if (si.writeQueue.getQueueSize() >= BROADCAST_MAX_QUEUED) {
+                broadcast.finish(index, new Exception("Too many writes are already queued for this socket."));
+                continue;
+            }
+
+            // Start a background operation
+            boolean busy = si.writeQueue.execute(new Runnable() {
+                @Override
+                public void run() {
+
+                    // Catch errors
+                    Exception error = null;
+                    try {
+
+                        // Check if still connected
+                        if (si.socket == null)
+                            throw new Exception("This socket is not connected.");
+
+                        // Write it. The data is shared by all sockets, so it must not be modified.
+                        synchronized (si.writeLock) {
+                            si.getOutputStream().write(bytes);
+                        }
+
+                    } catch (Exception e) {
+
+                        // Store error
+                        error = e;
+
+                    }
+
+                    // Done
+                    broadcast.finish(index, error);
+
+                }
+            }, new SerialExecutor.RejectionHandler() {
+                @Override
+                public void onRejected(String code, String message, Exception e) {
+
+                    // Record it as failed, instead of rejecting the whole broadcast
+                    broadcast.finish(index, new Exception(message, e));
+
+                }
+            });
+
+            // If the socket was still busy with an earlier write, report this one as pending straight away, so the
+            // broadcast doesn't wait on a slow client
+            if (busy)
+                broadcast.detach(index);
+
+        }
+
+        // Stop if the user wants to wait for all writes
+        if (timeout <= 0)
+            return;
+
+        // Return the results so far once the timeout is reached
+        synchronized (broadcast) {
+
+            // Stop if already done
+            if (broadcast.resolved.get())
+                return;
+
+            // Catch errors
+            try {
+
+                // Schedule it
+                broadcast.timeout = timer.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        broadcast.resolve();
+                    }
+                }, (long) timeout, TimeUnit.MILLISECONDS);
+
+            } catch (RejectedExecutionException e) {
+
+                // Shutting down, return what we have
+                broadcast.resolve();
+
+            }
+
+        }
+
+    }
+
+    // Create a new UDP socket that binds to the specified port
+    @ReactMethod public void udpBind(final int port,
+                                     final boolean broadcast,
+                                     final boolean reuse,
+                                     final Promise promise) {
+
+        // Start a background operation
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                try {
+
+                    // Create socket
+                    SocketInfo si = new SocketInfo();
+                    si.udpSocket = new MulticastSocket(port);
+
+                    // Set params
+                    if (broadcast) si.udpSocket.setBroadcast(true);
+                    if (reuse) si.udpSocket.setReuseAddress(true);
+
+                    // Store it and return ID
+                    synchronized (socketInfo) {
+
+                        // Store it
                         int id = nextSocketID++;
+                        si.id = id;
                         socketInfo.put(id, si);
 
                         // Create and return info
@@ -629,7 +1709,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
@@ -638,24 +1718,40 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                                      final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket has been closed.");
             return;
         }
 
         // Start a background operation
-        si.readThread.execute(new Runnable() {
+        si.readQueue.execute(new Runnable() {
             @Override
             public void run() {
 
                 // Catch errors
                 try {
 
-                    // Read it
+                    // Read packets until one gets through the filter, if there is one
                     byte[] buffer = new byte[1024*32];
                     DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                    si.udpSocket.receive(packet);
+                    while (true) {
+
+                        // Read it
+                        packet.setLength(buffer.length);
+                        si.udpSocket.receive(packet);
+
+                        // Capture it, even if it gets filtered out
+                        TrafficCapture capture = trafficCapture;
+                        if (si.capture && capture != null)
+                            capture.record(si.id, TrafficCapture.FLAG_UDP, buffer, 0, packet.getLength());
+
+                        // Check filter
+                        UdpFilter filter = si.udpFilter;
+                        if (filter == null || filter.accept(packet))
+                            break;
+
+                    }
 
                     // Convert data to requested format (only UTF8 currently supported)
                     String output = new String(buffer, 0, packet.getLength(), "UTF-8");
@@ -675,7 +1771,69 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
+
+    }
+
+    // Sets the filter which incoming UDP packets must pass before being returned by udpRead, or removes it if null
+    @ReactMethod public void udpSetFilter(final int id,
+                                          final ReadableMap opts,
+                                          final Promise promise) {
+
+        // Get socket info
+        final SocketInfo si = getSocketInfo(id);
+        if (si == null) {
+            promise.reject("socket-closed", "This socket has been closed.");
+            return;
+        }
+
+        // Start a background operation. This doesn't use the socket's queues, since a read may be waiting for a
+        // packet and the new filter should apply to it.
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                try {
+
+                    // Create and store the filter
+                    si.udpFilter = opts == null ? null : UdpFilter.fromOptions(opts);
+                    promise.resolve(null);
+
+                } catch (Exception e) {
+
+                    // Report error
+                    promise.reject(e);
+
+                }
+
+            }
+        }, promise);
+
+    }
+
+    // Returns the packet counters of the socket's current UDP filter
+    @ReactMethod public void udpGetFilterStats(final int id,
+                                               final Promise promise) {
+
+        // Get socket info
+        final SocketInfo si = getSocketInfo(id);
+        if (si == null) {
+            promise.reject("socket-closed", "This socket has been closed.");
+            return;
+        }
+
+        // Stop if there's no filter
+        UdpFilter filter = si.udpFilter;
+        if (filter == null) {
+            promise.resolve(null);
+            return;
+        }
+
+        // Create and return info
+        WritableMap map = Arguments.createMap();
+        filter.putStats(map);
+        promise.resolve(map);
 
     }
 
@@ -687,14 +1845,14 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                                      final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket has been closed.");
             return;
         }
 
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        si.writeQueue.execute(new Runnable() {
             @Override
             public void run() {
 
@@ -709,6 +1867,11 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
 
                     // Send the packet
                     si.udpSocket.send(packet);
+
+                    // Capture it
+                    TrafficCapture capture = trafficCapture;
+                    if (si.capture && capture != null)
+                        capture.record(si.id, TrafficCapture.FLAG_UDP | TrafficCapture.FLAG_SENT, buffer, 0, buffer.length);
                     promise.resolve(buffer.length);
 
                 } catch (Exception e) {
@@ -719,7 +1882,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
@@ -729,14 +1892,14 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                                      final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket has been closed.");
             return;
         }
 
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        si.writeQueue.execute(new Runnable() {
             @Override
             public void run() {
 
@@ -755,7 +1918,7 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
 
     }
 
@@ -765,14 +1928,14 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                                       final Promise promise) {
 
         // Get socket info
-        final SocketInfo si = socketInfo.get(id);
+        final SocketInfo si = getSocketInfo(id);
         if (si == null) {
             promise.reject("socket-closed", "This socket has been closed.");
             return;
         }
 
         // Start a background operation
-        si.writeThread.execute(new Runnable() {
+        si.writeQueue.execute(new Runnable() {
             @Override
             public void run() {
 
@@ -791,7 +1954,160 @@ public class RNNetworkStackModule extends ReactContextBaseJavaModule {
                 }
 
             }
-        });
+        }, promise);
+
+    }
+
+    // Starts capturing socket traffic into a memory-mapped ring file. Sockets must also have capture turned on.
+    @ReactMethod public void captureStart(final String path,
+                                          final double size,
+                                          final Promise promise) {
+
+        // Start a background operation
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                try {
+
+                    // Stop any existing capture, so the ring file can be replaced if it's the same one
+                    TrafficCapture old = lastCapture;
+                    trafficCapture = null;
+                    lastCapture = null;
+                    if (old != null)
+                        old.close();
+
+                    // Create the ring
+                    TrafficCapture capture = TrafficCapture.create(path, (long) size);
+                    lastCapture = capture;
+                    trafficCapture = capture;
+
+                    // Create and return info
+                    WritableMap map = Arguments.createMap();
+                    map.putInt("capacity", capture.getCapacity());
+                    promise.resolve(map);
+
+                } catch (Exception e) {
+
+                    // Report error
+                    promise.reject(e);
+
+                }
+
+            }
+        }, promise);
+
+    }
+
+    // Stops capturing socket traffic. The ring file is left in place, and can still be exported.
+    @ReactMethod public void captureStop(final Promise promise) {
+
+        // Remove it
+        final TrafficCapture capture = trafficCapture;
+        trafficCapture = null;
+        if (capture == null) {
+            promise.resolve(null);
+            return;
+        }
+
+        // Start a background operation
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                try {
+
+                    // Flush and close it
+                    capture.close();
+                    promise.resolve(null);
+
+                } catch (Exception e) {
+
+                    // Report error
+                    promise.reject(e);
+
+                }
+
+            }
+        }, promise);
+
+    }
+
+    // Turns traffic capture on or off for a socket
+    @ReactMethod public void captureSetEnabled(final int id,
+                                               final boolean enabled,
+                                               final Promise promise) {
+
+        // Get socket info
+        final SocketInfo si = getSocketInfo(id);
+        if (si == null) {
+            promise.reject("socket-closed", "This socket has been closed.");
+            return;
+        }
+
+        // Set it
+        si.capture = enabled;
+        promise.resolve(null);
+
+    }
+
+    // Writes the captured traffic to a pcap file. Exports the most recent capture, even if stopped, or the ring file
+    // at ringPath if specified.
+    @ReactMethod public void captureExport(final String path,
+                                           final String ringPath,
+                                           final Promise promise) {
+
+        // Check if there's anything to export
+        final TrafficCapture last = lastCapture;
+        if (last == null && (ringPath == null || ringPath.isEmpty())) {
+            promise.reject("not-capturing", "Traffic capture has not been started.");
+            return;
+        }
+
+        // Start a background operation
+        runInBackground(new Runnable() {
+            @Override
+            public void run() {
+
+                // Catch errors
+                try {
+
+                    // Open the ring file if needed. If it's the one we're using, export from memory instead.
+                    TrafficCapture capture = last;
+                    boolean opened = false;
+                    if (ringPath != null && !ringPath.isEmpty() && (last == null
+                            || !new File(ringPath).getCanonicalPath().equals(new File(last.getPath()).getCanonicalPath()))) {
+                        capture = TrafficCapture.open(ringPath);
+                        opened = true;
+                    }
+
+                    // Export it
+                    long count;
+                    try {
+                        count = capture.export(path);
+                    } finally {
+                        if (opened) capture.close();
+                    }
+
+                    // Create and return info
+                    WritableMap map = Arguments.createMap();
+                    map.putDouble("exported", count);
+                    map.putDouble("recorded", capture.getRecordCount());
+                    map.putDouble("dropped", capture.getDroppedCount());
+                    map.putInt("capacity", capture.getCapacity());
+                    promise.resolve(map);
+
+                } catch (Exception e) {
+
+                    // Report error
+                    promise.reject(e);
+
+                }
+
+            }
+        }, promise);
 
     }
 
@@ -0,0 +1,195 @@
+package com.networkstack;
+
+import com.facebook.react.bridge.Promise;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time, in submission order, on a shared executor. This doesn't own any threads itself, so
+ * a socket can have as many of these as it needs without costing anything while idle.
+ */
+public class SerialExecutor {
+
+    /** Called instead of running a task, if it can't be run. */
+    public interface RejectionHandler {
+        void onRejected(String code, String message, Exception e);
+    }
+
+    // A queued task, along with the handler to call if it never gets to run
+    private static class Task {
+
+        final Runnable runnable;
+        final RejectionHandler handler;
+
+        Task(Runnable runnable, RejectionHandler handler) {
+            this.runnable = runnable;
+            this.handler = handler;
+        }
+
+    }
+
+    // Runs queued tasks on one pool thread until the queue is empty. Tasks queued while it's running are picked up by
+    // the same thread, instead of being handed back to the pool while this thread is still counted as busy.
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+
+            while (true) {
+
+                // Get the next task, or stop if there are none left
+                Task task;
+                synchronized (SerialExecutor.this) {
+                    task = tasks.poll();
+                    if (task == null) {
+                        running = false;
+                        return;
+                    }
+                }
+
+                // Run it. If it throws, this thread is lost, so hand the rest of the queue to a new one.
+                boolean completed = false;
+                try {
+                    task.runnable.run();
+                    completed = true;
+                } finally {
+                    if (!completed)
+                        restart();
+                }
+
+            }
+
+        }
+    };
+
+    // The executor which actually runs our tasks
+    private final Executor executor;
+
+    // Pending tasks
+    private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+
+    // True while a pool thread is running our tasks
+    private boolean running = false;
+
+    // True once close() has been called
+    private boolean closed = false;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /** Queues a task. If it can't be run, the promise (if any) is rejected instead. */
+    public void execute(Runnable runnable, final Promise promise) {
+
+        execute(runnable, promise == null ? null : new RejectionHandler() {
+            @Override
+            public void onRejected(String code, String message, Exception e) {
+                if (e == null)
+                    promise.reject(code, message);
+                else
+                    promise.reject(code, message, e);
+            }
+        });
+
+    }
+
+    /**
+     * Queues a task. If it can't be run, the handler (if any) is called instead.
+     *
+     * @return True if the task was queued behind other tasks which were already running or waiting.
+     */
+    public boolean execute(Runnable runnable, RejectionHandler handler) {
+
+        boolean accepted, busy;
+        synchronized (this) {
+
+            // Add it to the queue, and start a thread if nothing else is running
+            accepted = !closed;
+            busy = running;
+            if (accepted) {
+                tasks.offer(new Task(runnable, handler));
+                running = true;
+            }
+
+        }
+
+        // Start running tasks if needed
+        if (accepted && !busy)
+            start();
+
+        // We've been closed
+        if (!accepted && handler != null)
+            handler.onRejected("socket-closed", "This socket is closed.", null);
+
+        return accepted && busy;
+
+    }
+
+    /** Stops accepting tasks, and rejects everything which hasn't started yet. A running task is left to finish. */
+    public void close() {
+
+        // Take all pending tasks
+        List<Task> pending;
+        synchronized (this) {
+            closed = true;
+            pending = new ArrayList<>(tasks);
+            tasks.clear();
+        }
+
+        // Reject them
+        for (Task task : pending)
+            if (task.handler != null)
+                task.handler.onRejected("socket-closed", "This socket is closed.", null);
+
+    }
+
+    /** @return The number of tasks waiting to run, not including the running one. */
+    public synchronized int getQueueSize() {
+        return tasks.size();
+    }
+
+    // Called after a task threw, to keep running the rest of the queue on another thread
+    private void restart() {
+
+        synchronized (this) {
+            if (tasks.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+
+        start();
+
+    }
+
+    // Hands the queue over to a pool thread. Only called while marked as running, with no thread running tasks.
+    private void start() {
+
+        // Catch errors
+        try {
+
+            // Submit it
+            executor.execute(drain);
+
+        } catch (RejectedExecutionException e) {
+
+            // The shared pool is full or has been shut down. Nothing would run the queue, so fail all of it.
+            List<Task> pending;
+            synchronized (this) {
+                running = false;
+                pending = new ArrayList<>(tasks);
+                tasks.clear();
+            }
+
+            for (Task task : pending)
+                if (task.handler != null)
+                    task.handler.onRejected("pool-exhausted", "No background threads are available to run this operation.", e);
+
+        }
+
+    }
+
+}
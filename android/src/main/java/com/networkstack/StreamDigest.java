@@ -0,0 +1,171 @@
+package com.networkstack;
+
+import com.facebook.react.bridge.ReadableMap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Computes a checksum or hash over data as it's transferred, so it doesn't need to be read a second time. Supports
+ * `crc32`, `crc32c`, `md5` and `sha256`. Results are lowercase hex.
+ */
+public class StreamDigest {
+
+    // One of these is used, depending on the algorithm
+    private final Checksum checksum;
+    private final MessageDigest messageDigest;
+
+    // Expected result, or null if not verifying
+    private final String expected;
+
+    // Result, once finished
+    private String result = null;
+
+    private StreamDigest(Checksum checksum, MessageDigest messageDigest, String expected) {
+        this.checksum = checksum;
+        this.messageDigest = messageDigest;
+        this.expected = expected;
+    }
+
+    /** Creates a digest from the options passed in from JS, or returns null if there are none. */
+    public static StreamDigest fromOptions(ReadableMap opts) throws Exception {
+
+        // Stop if not requested
+        if (opts == null || !opts.hasKey("algorithm") || opts.isNull("algorithm"))
+            return null;
+
+        // Get expected value
+        String expected = opts.hasKey("expected") && !opts.isNull("expected") ? opts.getString("expected").trim().toLowerCase(Locale.US) : null;
+
+        // Create it
+        String algorithm = opts.getString("algorithm").toLowerCase(Locale.US).replace("-", "");
+        if (algorithm.equals("crc32"))
+            return new StreamDigest(new CRC32(), null, expected);
+        else if (algorithm.equals("crc32c"))
+            return new StreamDigest(new CRC32C(), null, expected);
+        else if (algorithm.equals("md5"))
+            return new StreamDigest(null, MessageDigest.getInstance("MD5"), expected);
+        else if (algorithm.equals("sha256"))
+            return new StreamDigest(null, MessageDigest.getInstance("SHA-256"), expected);
+        else
+            throw new Exception("Unknown digest algorithm. Please specify one of: crc32, crc32c, md5, sha256.");
+
+    }
+
+    /** Adds data to the digest. */
+    public void update(byte[] data, int offset, int length) {
+        if (checksum != null)
+            checksum.update(data, offset, length);
+        else
+            messageDigest.update(data, offset, length);
+    }
+
+    /** Adds a single byte to the digest. */
+    public void update(int b) {
+        if (checksum != null)
+            checksum.update(b);
+        else
+            messageDigest.update((byte) b);
+    }
+
+    /** @return The result as lowercase hex. No more data can be added after this. */
+    public String getHex() {
+
+        // Return if already finished
+        if (result != null)
+            return result;
+
+        // Checksums are 32-bit, hashes are byte arrays
+        if (checksum != null) {
+            result = String.format(Locale.US, "%08x", checksum.getValue());
+        } else {
+            StringBuilder sb = new StringBuilder();
+            for (byte b : messageDigest.digest())
+                sb.append(String.format(Locale.US, "%02x", b & 0xff));
+            result = sb.toString();
+        }
+
+        return result;
+
+    }
+
+    /** Throws if an expected value was given and the result doesn't match it. */
+    public void verify() throws Exception {
+        if (expected != null && !expected.equals(getHex()))
+            throw new Exception("Digest mismatch. Expected " + expected + " but got " + getHex() + ".");
+    }
+
+    /** @return An output stream which adds everything written to it to the digest, before passing it on. */
+    public OutputStream wrap(final OutputStream output) {
+
+        return new OutputStream() {
+
+            @Override
+            public void write(int b) throws IOException {
+                output.write(b);
+                update(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                output.write(b, off, len);
+                update(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                output.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                output.close();
+            }
+
+        };
+
+    }
+
+    // CRC-32C (Castagnoli). The built in one needs API 26.
+    private static class CRC32C implements Checksum {
+
+        private static final int[] TABLE = new int[256];
+        static {
+            for (int i = 0 ; i < 256 ; i++) {
+                int crc = i;
+                for (int j = 0 ; j < 8 ; j++)
+                    crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+                TABLE[i] = crc;
+            }
+        }
+
+        private int crc = 0xFFFFFFFF;
+
+        @Override
+        public void update(int b) {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ b) & 0xff];
+        }
+
+        @Override
+        public void update(byte[] b, int off, int len) {
+            for (int i = off ; i < off + len ; i++)
+                crc = (crc >>> 8) ^ TABLE[(crc ^ b[i]) & 0xff];
+        }
+
+        @Override
+        public long getValue() {
+            return (~crc) & 0xFFFFFFFFL;
+        }
+
+        @Override
+        public void reset() {
+            crc = 0xFFFFFFFF;
+        }
+
+    }
+
+}
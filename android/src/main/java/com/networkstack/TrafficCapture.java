@@ -0,0 +1,350 @@
+package com.networkstack;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records data sent and received by sockets into a fixed-size, memory-mapped ring file. Once full, the oldest records
+ * are overwritten. Recording doesn't lock or allocate, so it can stay on in production.
+ *
+ * The ring file starts with a 64 byte header (big-endian): the magic "RNNSCAP1", then int slot size, then int slot
+ * count. After that come the slots, each holding one record:
+ *
+ * - long: sequence number + 1, or 0 if empty. Set to 0 before a record is written and to the sequence number + 1
+ *   after, so a half-written record is never valid.
+ * - long: timestamp, in microseconds since the epoch.
+ * - int: socket ID.
+ * - int: flags. Bit 0 is set for sent data, bit 1 is set for UDP.
+ * - int: offset of this record's data within the original chunk. Chunks bigger than a slot span several records.
+ * - int: total length of the original chunk.
+ * - int: length of the data in this record.
+ * - 4 bytes padding, then the data.
+ *
+ * export() writes the records as a pcap file with link type USER0 (147). Each packet starts with a 16 byte
+ * big-endian pseudo header: int socket ID, int flags, int chunk offset, int total length. The data follows.
+ *
+ * The commit words in the file are only a copy for reading the ring back later with open(). While the capture is
+ * open, writers and export() use an in-memory array of them instead, since updates to a mapped buffer aren't ordered
+ * between threads. A slot is claimed by swapping its commit word to a negative marker, so a writer which laps the
+ * ring while another writer or export() is still using the slot drops its record instead of tearing it.
+ */
+public class TrafficCapture {
+
+    /** Record flag for sent data. */
+    public static final int FLAG_SENT = 1;
+
+    /** Record flag for UDP data. */
+    public static final int FLAG_UDP = 2;
+
+    // Layout
+    private static final int FILE_HEADER_SIZE = 64;
+    private static final int SLOT_SIZE = 2048;
+    private static final int RECORD_HEADER_SIZE = 40;
+    private static final int SLOT_DATA_SIZE = SLOT_SIZE - RECORD_HEADER_SIZE;
+
+    // Slot field offsets
+    private static final int OFFSET_COMMIT = 0;
+    private static final int OFFSET_TIME = 8;
+    private static final int OFFSET_SOCKET = 16;
+    private static final int OFFSET_FLAGS = 20;
+    private static final int OFFSET_CHUNK_OFFSET = 24;
+    private static final int OFFSET_TOTAL_LENGTH = 28;
+    private static final int OFFSET_LENGTH = 32;
+
+    // pcap link type for private use
+    private static final int PCAP_LINKTYPE_USER0 = 147;
+
+    // The mapped ring file
+    private final String path;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slotCount;
+
+    // Commit word of each slot: sequence number + 1 once written, 0 if empty, or negative while in use
+    private final AtomicLongArray commits;
+
+    // Sequence number of the next record
+    private final AtomicLong nextSeq = new AtomicLong();
+
+    // Number of records dropped because their slot was still in use
+    private final AtomicLong dropped = new AtomicLong();
+
+    // True once the capture has been stopped
+    private volatile boolean closed = false;
+
+    // Used to turn nanoTime into wall clock time without calling currentTimeMillis per record
+    private final long baseMicros = System.currentTimeMillis() * 1000;
+    private final long baseNanos = System.nanoTime();
+
+    // Each thread copies data through its own view of the buffer, since a shared position isn't thread safe
+    private final ThreadLocal<ByteBuffer> views = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return buffer.duplicate();
+        }
+    };
+
+    // Buffer for recording single bytes
+    private final ThreadLocal<byte[]> singleByte = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[1];
+        }
+    };
+
+    /** Creates the ring file, replacing any existing one. */
+    public static TrafficCapture create(String path, long size) throws Exception {
+
+        // Check size
+        int slotCount = (int) Math.min((size - FILE_HEADER_SIZE) / SLOT_SIZE, (Integer.MAX_VALUE - FILE_HEADER_SIZE) / SLOT_SIZE);
+        if (slotCount < 1)
+            throw new Exception("Capture size is too small.");
+
+        // Create and map the file
+        File f = new File(path);
+        if (f.exists() && !f.delete())
+            throw new Exception("Unable to replace the existing capture file.");
+
+        RandomAccessFile file = new RandomAccessFile(f, "rw");
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, FILE_HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+
+        // Write header
+        buffer.put(0, (byte) 'R').put(1, (byte) 'N').put(2, (byte) 'N').put(3, (byte) 'S');
+        buffer.put(4, (byte) 'C').put(5, (byte) 'A').put(6, (byte) 'P').put(7, (byte) '1');
+        buffer.putInt(8, SLOT_SIZE);
+        buffer.putInt(12, slotCount);
+
+        return new TrafficCapture(path, file, buffer, slotCount);
+
+    }
+
+    /**
+     * Opens an existing ring file for export, for example one left behind by an earlier run. The returned capture is
+     * already stopped. Records which were being written when the ring was last used may come out torn.
+     */
+    public static TrafficCapture open(String path) throws Exception {
+
+        // Open and check the header
+        RandomAccessFile file = new RandomAccessFile(new File(path), "r");
+        try {
+
+            byte[] magic = new byte[8];
+            file.readFully(magic);
+            int slotSize = file.readInt();
+            int slotCount = file.readInt();
+            if (!new String(magic, "US-ASCII").equals("RNNSCAP1") || slotSize != SLOT_SIZE || slotCount < 1
+                    || file.length() < FILE_HEADER_SIZE + (long) slotCount * SLOT_SIZE)
+                throw new Exception("Not a valid capture file.");
+
+            // Map it
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, FILE_HEADER_SIZE + (long) slotCount * SLOT_SIZE);
+            TrafficCapture capture = new TrafficCapture(path, file, buffer, slotCount);
+            capture.close();
+            return capture;
+
+        } catch (Exception e) {
+            file.close();
+            throw e;
+        }
+
+    }
+
+    private TrafficCapture(String path, RandomAccessFile file, MappedByteBuffer buffer, int slotCount) {
+
+        this.path = path;
+        this.file = file;
+        this.buffer = buffer;
+        this.slotCount = slotCount;
+
+        // Load the commit words, and continue numbering after the newest record
+        commits = new AtomicLongArray(slotCount);
+        long newest = 0;
+        for (int i = 0 ; i < slotCount ; i++) {
+            long commit = buffer.getLong(FILE_HEADER_SIZE + i * SLOT_SIZE + OFFSET_COMMIT);
+            if (commit < 0)
+                commit = 0;
+            commits.set(i, commit);
+            newest = Math.max(newest, commit);
+        }
+        nextSeq.set(newest);
+
+    }
+
+    /** Records a chunk of data. Safe to call from any thread. */
+    public void record(int socketID, int flags, byte[] data, int offset, int length) {
+
+        // Nothing to record
+        if (length <= 0 || closed)
+            return;
+
+        long time = baseMicros + (System.nanoTime() - baseNanos) / 1000;
+        ByteBuffer view = views.get();
+        int chunkOffset = 0;
+        do {
+
+            // Claim a slot
+            long seq = nextSeq.getAndIncrement();
+            int index = (int) (seq % slotCount);
+            int slot = FILE_HEADER_SIZE + index * SLOT_SIZE;
+            int len = Math.min(SLOT_DATA_SIZE, length - chunkOffset);
+            chunkOffset += len;
+            if (!claim(index, seq)) {
+                dropped.incrementAndGet();
+                continue;
+            }
+
+            // Fill it in
+            buffer.putLong(slot + OFFSET_COMMIT, 0);
+            buffer.putLong(slot + OFFSET_TIME, time);
+            buffer.putInt(slot + OFFSET_SOCKET, socketID);
+            buffer.putInt(slot + OFFSET_FLAGS, flags);
+            buffer.putInt(slot + OFFSET_CHUNK_OFFSET, chunkOffset - len);
+            buffer.putInt(slot + OFFSET_TOTAL_LENGTH, length);
+            buffer.putInt(slot + OFFSET_LENGTH, len);
+            view.position(slot + RECORD_HEADER_SIZE);
+            view.put(data, offset + chunkOffset - len, len);
+
+            // Commit it. Setting the in-memory word publishes the data written above to other threads.
+            buffer.putLong(slot + OFFSET_COMMIT, seq + 1);
+            commits.set(index, seq + 1);
+
+        } while (chunkOffset < length);
+
+    }
+
+    // Marks a slot as in use for writing the specified record. Fails if the slot is already in use, or already holds
+    // a newer record.
+    private boolean claim(int index, long seq) {
+
+        while (true) {
+            long commit = commits.get(index);
+            if (commit < 0 || commit > seq)
+                return false;
+            if (commits.compareAndSet(index, commit, -(seq + 1)))
+                return true;
+        }
+
+    }
+
+    /** Records a single byte. */
+    public void record(int socketID, int flags, int b) {
+
+        // Only the first call on each thread allocates
+        byte[] single = singleByte.get();
+        single[0] = (byte) b;
+        record(socketID, flags, single, 0, 1);
+
+    }
+
+    /**
+     * Writes all records still in the ring to a pcap file, oldest first. Records being written at the time are
+     * skipped. Works on stopped captures too.
+     */
+    public long export(String path) throws IOException {
+
+        OutputStream output = new BufferedOutputStream(new FileOutputStream(new File(path)));
+        try {
+
+            // Write pcap header
+            ByteBuffer header = ByteBuffer.allocate(24).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(PCAP_LINKTYPE_USER0);
+            output.write(header.array());
+
+            // Go through the slots still holding data
+            long end = nextSeq.get();
+            long start = Math.max(0, end - slotCount);
+            ByteBuffer view = buffer.duplicate();
+            ByteBuffer packetHeader = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] data = new byte[SLOT_DATA_SIZE];
+            long count = 0;
+            for (long seq = start ; seq < end ; seq++) {
+
+                // Hold the slot while reading it, so writers lapping the ring drop their records instead of
+                // overwriting this one
+                int index = (int) (seq % slotCount);
+                int slot = FILE_HEADER_SIZE + index * SLOT_SIZE;
+                if (!commits.compareAndSet(index, seq + 1, -(seq + 1)))
+                    continue;
+
+                // Read record
+
+                long time = buffer.getLong(slot + OFFSET_TIME);
+                int socketID = buffer.getInt(slot + OFFSET_SOCKET);
+                int flags = buffer.getInt(slot + OFFSET_FLAGS);
+                int chunkOffset = buffer.getInt(slot + OFFSET_CHUNK_OFFSET);
+                int totalLength = buffer.getInt(slot + OFFSET_TOTAL_LENGTH);
+                int len = Math.min(SLOT_DATA_SIZE, Math.max(0, buffer.getInt(slot + OFFSET_LENGTH)));
+                view.position(slot + RECORD_HEADER_SIZE);
+                view.get(data, 0, len);
+
+                // Release the slot
+                commits.set(index, seq + 1);
+
+                // Write pcap packet header, then our pseudo header (big-endian), then the data
+                packetHeader.clear();
+                packetHeader.order(ByteOrder.LITTLE_ENDIAN);
+                packetHeader.putInt((int) (time / 1000000)).putInt((int) (time % 1000000)).putInt(16 + len).putInt(16 + len);
+                packetHeader.order(ByteOrder.BIG_ENDIAN);
+                packetHeader.putInt(socketID).putInt(flags).putInt(chunkOffset).putInt(totalLength);
+                output.write(packetHeader.array(), 0, 32);
+                output.write(data, 0, len);
+                count += 1;
+
+            }
+
+            return count;
+
+        } finally {
+            output.close();
+        }
+
+    }
+
+    /** @return The number of records written since the capture started, including overwritten ones. */
+    public long getRecordCount() {
+        return nextSeq.get();
+    }
+
+    /** @return The number of records dropped because their slot was still in use. */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /** @return The number of records the ring can hold. */
+    public int getCapacity() {
+        return slotCount;
+    }
+
+    /** @return The path of the ring file. */
+    public String getPath() {
+        return path;
+    }
+
+    /** Stops capturing. The ring file is left in place, and the records can still be exported. */
+    public void close() throws IOException {
+
+        // Stop recording
+        if (closed)
+            return;
+
+        closed = true;
+
+        // Flush and close the file. The mapping stays valid after this, so export() still works.
+        if (!buffer.isReadOnly())
+            buffer.force();
+
+        file.close();
+
+    }
+
+}
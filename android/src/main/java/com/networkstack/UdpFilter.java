@@ -0,0 +1,253 @@
+package com.networkstack;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableMap;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Decides which incoming UDP packets get passed on to JS. Packets which don't match are dropped natively, so they
+ * never cross the bridge. Only used from a socket's read queue, apart from the counters.
+ */
+public class UdpFilter {
+
+    // Maximum number of packets remembered for deduplication
+    private static final int DEDUP_MAX_ENTRIES = 1024;
+
+    // Allowed source addresses and ports, or null to allow any
+    private HashSet<String> addresses = null;
+    private HashSet<Integer> ports = null;
+
+    // Payload must start with one of these, or null to allow any
+    private byte[][] prefixes = null;
+
+    // Payload must contain one of these, or null to allow any
+    private byte[][] patterns = null;
+
+    // Identical packets received within this many milliseconds of the first one are dropped, or 0 to allow all
+    private long dedupWindow = 0;
+
+    // Hashes of recently passed packets, and when they were passed. Oldest first.
+    private final LinkedHashMap<Long, Long> recent = new LinkedHashMap<Long, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > DEDUP_MAX_ENTRIES;
+        }
+    };
+
+    // Counters
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong droppedAddress = new AtomicLong();
+    private final AtomicLong droppedPort = new AtomicLong();
+    private final AtomicLong droppedPayload = new AtomicLong();
+    private final AtomicLong droppedDuplicate = new AtomicLong();
+
+    /** Creates a filter from the options passed in from JS. This may do a DNS lookup, so don't call it on the JS thread. */
+    public static UdpFilter fromOptions(ReadableMap opts) throws Exception {
+
+        UdpFilter filter = new UdpFilter();
+
+        // Get allowed addresses. Store them in the same format the packets will have.
+        if (opts.hasKey("addresses") && !opts.isNull("addresses")) {
+            ReadableArray arr = opts.getArray("addresses");
+            filter.addresses = new HashSet<>();
+            for (int i = 0 ; i < arr.size() ; i++)
+                filter.addresses.add(InetAddress.getByName(arr.getString(i)).getHostAddress());
+        }
+
+        // Get allowed ports
+        if (opts.hasKey("ports") && !opts.isNull("ports")) {
+            ReadableArray arr = opts.getArray("ports");
+            filter.ports = new HashSet<>();
+            for (int i = 0 ; i < arr.size() ; i++)
+                filter.ports.add(arr.getInt(i));
+        }
+
+        // Get payload matches
+        filter.prefixes = readPatterns(opts, "prefixes");
+        filter.patterns = readPatterns(opts, "contains");
+
+        // Get dedup window
+        if (opts.hasKey("dedupWindow") && !opts.isNull("dedupWindow"))
+            filter.dedupWindow = (long) opts.getDouble("dedupWindow");
+
+        // Done
+        return filter;
+
+    }
+
+    // Reads a list of byte patterns. Each one can be a UTF-8 string, an array of byte values, or an object
+    // containing a `base64` string.
+    private static byte[][] readPatterns(ReadableMap opts, String key) throws Exception {
+
+        // Stop if not specified
+        if (!opts.hasKey(key) || opts.isNull(key))
+            return null;
+
+        // Convert each one
+        ReadableArray arr = opts.getArray(key);
+        byte[][] patterns = new byte[arr.size()][];
+        for (int i = 0 ; i < arr.size() ; i++) {
+
+            // Check pattern type
+            if (arr.getType(i) == ReadableType.String) {
+
+                // Pattern is text
+                patterns[i] = arr.getString(i).getBytes("UTF-8");
+
+            } else if (arr.getType(i) == ReadableType.Array) {
+
+                // Pattern is a list of byte values
+                ReadableArray bytes = arr.getArray(i);
+                patterns[i] = new byte[bytes.size()];
+                for (int j = 0 ; j < bytes.size() ; j++) {
+                    int num = bytes.getInt(j);
+                    if (num < 0 || num > 255)
+                        throw new Exception("Filter pattern bytes must be between 0 and 255.");
+                    patterns[i][j] = (byte) num;
+                }
+
+            } else if (arr.getType(i) == ReadableType.Map && arr.getMap(i).hasKey("base64")) {
+
+                // Pattern is binary data in base64 format
+                patterns[i] = Base64.decodeBase64(arr.getMap(i).getString("base64").getBytes("UTF-8"));
+
+            } else {
+
+                // Unknown type!
+                throw new Exception("Unknown filter pattern type. Please specify a string, an array of bytes, or { base64 }.");
+
+            }
+
+            // Ensure we have some bytes in the pattern
+            if (patterns[i].length == 0)
+                throw new Exception("Filter patterns can't be empty.");
+
+        }
+
+        return patterns;
+
+    }
+
+    /** @return True if the packet should be passed on to JS. */
+    public boolean accept(DatagramPacket packet) {
+
+        received.incrementAndGet();
+        byte[] data = packet.getData();
+        int offset = packet.getOffset();
+        int length = packet.getLength();
+
+        // Check source address
+        if (addresses != null && !addresses.contains(packet.getAddress().getHostAddress())) {
+            droppedAddress.incrementAndGet();
+            return false;
+        }
+
+        // Check source port
+        if (ports != null && !ports.contains(packet.getPort())) {
+            droppedPort.incrementAndGet();
+            return false;
+        }
+
+        // Check payload
+        if ((prefixes != null && !startsWithAny(data, offset, length, prefixes))
+                || (patterns != null && !containsAny(data, offset, length, patterns))) {
+            droppedPayload.incrementAndGet();
+            return false;
+        }
+
+        // Check for duplicates
+        if (dedupWindow > 0 && isDuplicate(packet, data, offset, length)) {
+            droppedDuplicate.incrementAndGet();
+            return false;
+        }
+
+        // Packet is good
+        accepted.incrementAndGet();
+        return true;
+
+    }
+
+    // Checks if the same packet from the same sender was passed recently, and remembers it if not
+    private boolean isDuplicate(DatagramPacket packet, byte[] data, int offset, int length) {
+
+        // Remove expired entries. They're in the order they were added, so stop at the first one still in the window.
+        long now = System.currentTimeMillis();
+        Iterator<Long> it = recent.values().iterator();
+        while (it.hasNext() && it.next() + dedupWindow <= now)
+            it.remove();
+
+        // Hash the sender and payload (64-bit FNV-1a)
+        long hash = 0xcbf29ce484222325L;
+        byte[] address = packet.getAddress().getAddress();
+        for (byte b : address)
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        hash = (hash ^ packet.getPort()) * 0x100000001b3L;
+        for (int i = offset ; i < offset + length ; i++)
+            hash = (hash ^ (data[i] & 0xff)) * 0x100000001b3L;
+
+        // Check if seen
+        if (recent.containsKey(hash))
+            return true;
+
+        // Remember it
+        recent.put(hash, now);
+        return false;
+
+    }
+
+    // Checks if the data starts with any of the patterns
+    private static boolean startsWithAny(byte[] data, int offset, int length, byte[][] patterns) {
+
+        for (byte[] pattern : patterns)
+            if (pattern.length <= length && matchesAt(data, offset, pattern))
+                return true;
+
+        return false;
+
+    }
+
+    // Checks if the data contains any of the patterns
+    private static boolean containsAny(byte[] data, int offset, int length, byte[][] patterns) {
+
+        for (byte[] pattern : patterns)
+            for (int i = offset ; i <= offset + length - pattern.length ; i++)
+                if (matchesAt(data, i, pattern))
+                    return true;
+
+        return false;
+
+    }
+
+    // Checks if the pattern appears at the specified position
+    private static boolean matchesAt(byte[] data, int position, byte[] pattern) {
+
+        for (int i = 0 ; i < pattern.length ; i++)
+            if (data[position + i] != pattern[i])
+                return false;
+
+        return true;
+
+    }
+
+    /** Writes the counters into the map. */
+    public void putStats(WritableMap map) {
+        map.putDouble("received", received.get());
+        map.putDouble("accepted", accepted.get());
+        map.putDouble("droppedAddress", droppedAddress.get());
+        map.putDouble("droppedPort", droppedPort.get());
+        map.putDouble("droppedPayload", droppedPayload.get());
+        map.putDouble("droppedDuplicate", droppedDuplicate.get());
+    }
+
+}
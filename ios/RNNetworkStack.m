@@ -114,9 +114,14 @@ RCT_EXPORT_METHOD(tcpRead:(int)identifier
                   p3:(NSString*)saveTo
                   p4:(NSString*)outType
                   p5:(NSString*)progressID
-                  p6:(RCTPromiseResolveBlock)resolve
-                  p7:(RCTPromiseRejectBlock)reject) {
+                  p6:(NSDictionary*)digestOpts
+                  p7:(RCTPromiseResolveBlock)resolve
+                  p8:(RCTPromiseRejectBlock)reject) {
   
+    // Digests are not supported on this platform yet
+    if (digestOpts)
+        return reject(@"unsupported", @"Digests are not supported on this platform.", NULL);
+    
     // Get fields
     long maxLength = (long) maxLengthDbl;
     
@@ -365,7 +370,11 @@ RCT_EXPORT_METHOD(tcpRead:(int)identifier
 }
 
 // Writes data to the socket
-RCT_EXPORT_METHOD(tcpWrite:(int)identifier p1:(id)data p2:(NSString*)dataType p3:(NSString*)progressID p4:(RCTPromiseResolveBlock)resolve p5:(RCTPromiseRejectBlock)reject) {
+RCT_EXPORT_METHOD(tcpWrite:(int)identifier p1:(id)data p2:(NSString*)dataType p3:(NSString*)progressID p4:(NSDictionary*)digestOpts p5:(RCTPromiseResolveBlock)resolve p6:(RCTPromiseRejectBlock)reject) {
+    
+    // Digests are not supported on this platform yet
+    if (digestOpts)
+        return reject(@"unsupported", @"Digests are not supported on this platform.", NULL);
     
     // Find socket
     RNSocket* sock = [self.activeSockets objectForKey:[NSNumber numberWithInt:identifier]];
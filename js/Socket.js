@@ -38,6 +38,79 @@ export default class Socket {
         return NativeModules.RNNetworkStack.socketClose(this.id)
     }
 
+    /**
+     * Get info about the shared background thread pool used by all sockets. Android only.
+     *
+     * @returns {Promise<object>} Contains `sockets`, `socketQueueSize`, `poolSize`, `activeCount`, `largestPoolSize`,
+     * `maxPoolSize`, `rejectedTaskCount`, `taskCount` and `completedTaskCount` fields.
+     */
+    static getPoolStats() {
+        return NativeModules.RNNetworkStack.getPoolStats()
+    }
+
+    /**
+     * Set the maximum number of background threads shared by all sockets. Defaults to 256. Each pending blocking
+     * operation, such as a `read()`, `accept()` or `receive()`, holds a thread until it completes. Operations are
+     * never queued behind blocked ones: once every thread is busy, new operations fail with a `pool-exhausted`
+     * error. Android only.
+     *
+     * @param {int} maxThreads The maximum number of threads.
+     * @returns {Promise}
+     */
+    static setPoolSize(maxThreads) {
+        return NativeModules.RNNetworkStack.setPoolSize(maxThreads)
+    }
+
+    /**
+     * Turn traffic capture on or off for this socket. Data is only recorded while a capture is running, see
+     * `Socket.startCapture()`. Android only.
+     *
+     * @param {boolean} enabled True to record data sent and received by this socket.
+     * @returns {Promise}
+     */
+    setCapture(enabled) {
+        return NativeModules.RNNetworkStack.captureSetEnabled(this.id, !!enabled)
+    }
+
+    /**
+     * Start recording socket traffic into a fixed-size, memory-mapped ring file. Once full, the oldest data is
+     * overwritten. Only sockets with capture turned on are recorded. Android only.
+     *
+     * @param {string} path The path of the ring file. Any existing file is replaced, so export it first if needed.
+     * @param {int} size The size of the ring file in bytes.
+     * @returns {Promise<object>} Contains `capacity`, the number of records the ring can hold.
+     */
+    static startCapture(path, size = 1024 * 1024 * 4) {
+        return NativeModules.RNNetworkStack.captureStart(path, size)
+    }
+
+    /**
+     * Stop recording socket traffic. The recorded traffic can still be exported afterwards. Android only.
+     *
+     * @returns {Promise}
+     */
+    static stopCapture() {
+        return NativeModules.RNNetworkStack.captureStop()
+    }
+
+    /**
+     * Write the recorded traffic to a pcap file, oldest first. Packets use link type USER0 (147), and start with a
+     * 16 byte big-endian header: socket ID, flags (1 = sent, 2 = UDP), offset within the original chunk, and
+     * length of the original chunk. Exports the most recent capture, even if it has been stopped. Pass `ringPath` to
+     * export a ring file left on disk instead, for example by an earlier run of the app. Android only.
+     *
+     * Records are never torn while the capture is open. Records in a ring file from an earlier run are read as they
+     * are on disk, so one being written when the app stopped may come out torn.
+     *
+     * @param {string} path The path of the pcap file to create.
+     * @param {string} ringPath The path of a ring file to export. Defaults to the most recent capture.
+     * @returns {Promise<object>} Contains `exported`, `recorded`, `dropped` and `capacity` record counts. `dropped`
+     * counts records which were skipped because their slot was still being written or exported.
+     */
+    static exportCapture(path, ringPath = null) {
+        return NativeModules.RNNetworkStack.captureExport(path, ringPath)
+    }
+
     /** Get the native event emitter */
     static get emitter() {
 
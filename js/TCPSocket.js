@@ -59,6 +59,16 @@ export default class TCPSocket extends Socket {
      * - `skip` : _(boolean)_ If true, the data will be skipped instead of being returned.
      * - `type` : _(string)_ Defaults to 'utf8'. One of: `utf8`, `buffer`
      * - `onProgress` : _(function(int))_ Called every so often with the amount of bytes transferred
+     * - `http` : _(boolean)_ Reads one complete HTTP/1.1 request or response. `saveTo`, `skip` and `type` apply to the body. Android only.
+     * - `requestMethod` : _(string)_ When reading an HTTP response, the method of the request it answers. Responses to `HEAD` have no body.
+     * - `digest` : _(string)_ Computes a digest of the data while it's read. One of: `crc32`, `crc32c`, `md5`, `sha256`. Android only.
+     * - `expectedDigest` : _(string)_ If set, the read fails if the digest (in hex) doesn't match.
+     * 
+     * When `digest` is set, the result is an object containing `data` and `digest`. For HTTP reads, `digest` is added
+     * to the result instead and covers the body only.
+     * 
+     * When `http` is set, the result is an object containing `type` ('request' or 'response'), `version`, `status` and
+     * `statusText` or `method` and `target`, `headers` (with lowercase names), `keepAlive`, `bodyLength`, and `body`.
      * 
      * @param {Object} opts Options object.
      * @returns {Promise<string>} The read data 
@@ -96,14 +106,24 @@ export default class TCPSocket extends Socket {
 
         // Pass request to native lib
         let outType = opts.saveTo ? 'save' : opts.skip ? 'skip' : opts.type || 'utf8'
-        let out = await NativeModules.RNNetworkStack.tcpRead(
+        let digestOpts = opts.digest ? { algorithm: opts.digest, expected: opts.expectedDigest || null } : null
+        let request = opts.http ? NativeModules.RNNetworkStack.tcpReadHttp(
+            this.id,
+            opts.requestMethod || "",
+            opts.saveTo,
+            outType,
+            eventID || "",
+            digestOpts
+        ) : NativeModules.RNNetworkStack.tcpRead(
             this.id, 
             opts.until, 
             typeof opts.length == 'number' ? opts.length : -1,
             opts.saveTo,
             outType,
-            eventID || ""
-        ).then(val => {
+            eventID || "",
+            digestOpts
+        )
+        let out = await request.then(val => {
 
             // Remove listener if needed
             if (eventSubscription)
@@ -123,26 +143,40 @@ export default class TCPSocket extends Socket {
 
         })
 
+        // Convert HTTP body if needed
+        if (opts.http) {
+            if (outType == 'buffer') out.body = Buffer.from(out.body, 'base64')
+            return out
+        }
+
+        // Split out the digest if needed
+        let digest = null
+        if (digestOpts) {
+            digest = out.digest
+            out = out.data
+        }
+
         // Check output type
+        let data = null
         if (outType == 'skip') {
 
             // Nothing returned
-            return null
+            data = null
 
         } else if (outType == 'save') {
 
             // Nothing returned since data was saved to a file
-            return null
+            data = null
 
         } else if (outType == 'utf8') {
 
             // Return data as-is
-            return out
+            data = out
 
         } else if (outType == 'buffer') {
 
             // Convert base64 to a buffer
-            return Buffer.from(out, 'base64')
+            data = Buffer.from(out, 'base64')
 
         } else {
 
@@ -151,6 +185,9 @@ export default class TCPSocket extends Socket {
 
         }
 
+        // Done
+        return digestOpts ? { data, digest } : data
+
     }
 
     /**
@@ -160,7 +197,10 @@ export default class TCPSocket extends Socket {
      * @param {Object} opts Options object.
      * @param {boolean} opts.file If true, `data` contains the path to a file. The contents of the file will be sent over the socket.
      * @param {function} opts.onProgress Called every so often with the amount of bytes transferred. Only applies to `file` transfers.
-     * @returns {Promise} A promise which resolves once the data has been sent
+     * @param {string} opts.digest Computes a digest of the data while it's sent. One of: `crc32`, `crc32c`, `md5`, `sha256`. Android only.
+     * @param {string} opts.expectedDigest If set, the write fails if the digest (in hex) doesn't match. The digest is
+     * only known once all the data has gone out, so this reports a mismatch but can't stop it from being sent.
+     * @returns {Promise} A promise which resolves once the data has been sent. If `digest` was set, resolves with the digest in hex.
      */
     async write(data, opts = {}) {
 
@@ -205,13 +245,99 @@ export default class TCPSocket extends Socket {
         this.pendingPromises.push(promiseObj)
 
         // Get data type
-        let dataType = 'utf8'
-        if (opts.file) {
-            
-            // Data is a single byte
-            dataType = 'file'
+        let dataType = 'file'
+        if (!opts.file)
+            ({ data, dataType } = await TCPSocket._encode(data))
+
+        // Pass request to native lib
+        NativeModules.RNNetworkStack.tcpWrite(
+            this.id, 
+            data, 
+            dataType,
+            eventID,
+            opts.digest ? { algorithm: opts.digest, expected: opts.expectedDigest || null } : null
+        ).then(val => {
+
+            // Remove listener if needed
+            if (eventSubscription)
+                eventSubscription.remove()
+
+            // Pass on data
+            promiseObj.resolve(val)
+            this.pendingPromises = this.pendingPromises.filter(o => o != promiseObj)
+
+        }).catch(err => {
+
+            // Remove listener if needed
+            if (eventSubscription)
+                eventSubscription.remove()
+
+            // Pass on error
+            promiseObj.reject(err)
+            this.pendingPromises = this.pendingPromises.filter(o => o != promiseObj)
+
+        })
+
+        // Wait for promise
+        return promise
+
+    }
+
+    /**
+     * Writes the same data to many sockets at once. The data is encoded once and shared by all the writes, and each
+     * socket writes independently, so a slow socket doesn't hold up the others. Android only.
+     *
+     * If a socket is still busy with an earlier write, the data is queued behind it and reported as `pending` straight
+     * away, instead of waiting for it. If too many writes are already queued for a socket, it's reported as `failed`.
+     *
+     * @param {TCPSocket[]|int[]|string} targets The sockets to write to, or the name of a socket group. See `joinGroup()`.
+     * @param {string|int|Blob|ArrayBuffer|Object} data Data to send. Accepts the same types as `write()`.
+     * @param {Object} opts Options object.
+     * @param {int} opts.timeout If set, resolves after this many milliseconds even if some writes are still running.
+     * @returns {Promise<object>} Contains `sent`, `failed` and `pending` counts, and `results`, an array containing
+     * `id`, `status` ('sent', 'failed' or 'pending') and `error` for each socket.
+     */
+    static async broadcast(targets, data, opts = {}) {
+
+        // Get socket IDs, unless it's a group name
+        if (Array.isArray(targets))
+            targets = targets.map(t => t instanceof TCPSocket ? t.id : t)
+
+        // Encode the data
+        let encoded = await TCPSocket._encode(data)
+
+        // Pass request to native lib
+        return NativeModules.RNNetworkStack.tcpBroadcast(targets, encoded.data, encoded.dataType, opts.timeout || 0)
+
+    }
+
+    /**
+     * Adds this socket to a named group, which can be used as the target of `TCPSocket.broadcast()`. The socket is
+     * removed from all groups when it's closed. Android only.
+     *
+     * @param {string} name The group name.
+     * @returns {Promise}
+     */
+    joinGroup(name) {
+        return NativeModules.RNNetworkStack.socketGroupAdd(name, this.id)
+    }
+
+    /**
+     * Removes this socket from a named group. Android only.
+     *
+     * @param {string} name The group name.
+     * @returns {Promise}
+     */
+    leaveGroup(name) {
+        return NativeModules.RNNetworkStack.socketGroupRemove(name, this.id)
+    }
 
-        } else if (data === null || data === undefined) {
+    /** @private Converts data to a form which can be passed to the native lib */
+    static async _encode(data) {
+
+        // Get data type
+        let dataType = 'utf8'
+        if (data === null || data === undefined) {
             
             // No data provided
             throw new Error("No data provided to send.")
@@ -267,21 +393,76 @@ export default class TCPSocket extends Socket {
 
         }
 
+        // Done
+        return { data, dataType }
+
+    }
+
+    /**
+     * Moves all incoming data from this socket directly to another socket or a file, without passing it through JS.
+     * When this socket reaches the end of its data, the target socket's output is shut down. Android only.
+     *
+     * @param {TCPSocket|string} target The socket to send the data to, or the path of a file to write it to.
+     * @param {Object} opts Options object.
+     * @param {boolean} opts.bidirectional If true, data coming from the target socket is also sent to this socket. The
+     * pipe stops as soon as either side closes.
+     * @param {function(int, int)} opts.onProgress Called every so often with the amount of bytes moved forward and backward.
+     * @returns {Promise<object>} Resolves when the pipe stops. Contains `forwardBytes`, `backwardBytes`, and `error`
+     * if it was stopped by an error.
+     */
+    pipeTo(target, opts = {}) {
+        return TCPSocket._pipe(this.id, target instanceof TCPSocket ? target.id : target, !!opts.bidirectional, opts)
+    }
+
+    /**
+     * Sends the contents of a file directly to this socket, without passing it through JS. Android only.
+     *
+     * @param {string} path The path of the file to send.
+     * @param {Object} opts Options object.
+     * @param {function(int)} opts.onProgress Called every so often with the amount of bytes sent.
+     * @returns {Promise<object>} Resolves when the whole file has been sent. Contains `forwardBytes`.
+     */
+    pipeFromFile(path, opts = {}) {
+        return TCPSocket._pipe(path, this.id, false, opts)
+    }
+
+    /** @private Starts a native pipe */
+    static async _pipe(src, dst, bidirectional, opts) {
+
+        // Check if user wants progress events. NOTE: This weirdness is due to React Native's inability to have
+        // multiple callbacks in a native API call.
+        let eventID = null
+        let eventSubscription = null
+        if (opts.onProgress) {
+
+            // Get event ID
+            if (!TCPSocket.nextEventID) TCPSocket.nextEventID = 1
+            eventID = "" + (TCPSocket.nextEventID++)
+
+            // Add listener
+            eventSubscription = Socket.emitter.addListener('net.pipe', str => {
+
+                // Check if ours
+                let args = str.split('|')
+                if (args[0] != eventID)
+                    return
+
+                // Convert to progress and send it
+                opts.onProgress(parseInt(args[1]), parseInt(args[2]))
+
+            })
+
+        }
+
         // Pass request to native lib
-        NativeModules.RNNetworkStack.tcpWrite(
-            this.id, 
-            data, 
-            dataType,
-            eventID
-        ).then(val => {
+        return NativeModules.RNNetworkStack.pipe(src, dst, bidirectional, eventID || "").then(val => {
 
             // Remove listener if needed
             if (eventSubscription)
                 eventSubscription.remove()
 
             // Pass on data
-            promiseObj.resolve(val)
-            this.pendingPromises = this.pendingPromises.filter(o => o != promiseObj)
+            return val
 
         }).catch(err => {
 
@@ -290,14 +471,10 @@ export default class TCPSocket extends Socket {
                 eventSubscription.remove()
 
             // Pass on error
-            promiseObj.reject(err)
-            this.pendingPromises = this.pendingPromises.filter(o => o != promiseObj)
+            throw err
 
         })
 
-        // Wait for promise
-        return promise
-
     }
 
     /**
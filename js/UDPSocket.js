@@ -38,6 +38,52 @@ export default class UDPSocket extends Socket {
 
     }
 
+    /**
+     * Only pass packets which match the filter to `receive()`. Everything else is dropped natively, without crossing
+     * the bridge. All specified conditions must match. Available options:
+     * - `addresses` : _(string[])_ Only allow packets from these sender addresses.
+     * - `ports` : _(int[])_ Only allow packets from these sender ports.
+     * - `prefixes` : _(pattern[])_ Only allow packets whose data starts with one of these patterns.
+     * - `contains` : _(pattern[])_ Only allow packets whose data contains one of these patterns.
+     * - `dedupWindow` : _(int)_ Drop packets identical to one received from the same sender within this many milliseconds.
+     *
+     * Each pattern is matched against the raw packet bytes. It can be a string (matched as UTF-8), an array of byte
+     * values, a `Uint8Array`, an `ArrayBuffer`, or `{ base64: '...' }`.
+     *
+     * Android only.
+     *
+     * @param {object} opts The filter options. Pass null to remove the filter.
+     * @returns {Promise}
+     */
+    async setFilter(opts) {
+
+        // Convert binary patterns to arrays of byte values, since they can't be passed to the native lib directly
+        let toPattern = p => p instanceof ArrayBuffer ? Array.from(new Uint8Array(p))
+            : ArrayBuffer.isView(p) ? Array.from(new Uint8Array(p.buffer, p.byteOffset, p.byteLength))
+            : p
+        if (opts) opts = Object.assign({}, opts, {
+            prefixes: opts.prefixes ? opts.prefixes.map(toPattern) : null,
+            contains: opts.contains ? opts.contains.map(toPattern) : null
+        })
+
+        // Pass request to native lib
+        return NativeModules.RNNetworkStack.udpSetFilter(this.id, opts || null)
+
+    }
+
+    /**
+     * Get the packet counters of the current filter. Android only.
+     *
+     * @returns {Promise<object>} Contains `received`, `accepted`, `droppedAddress`, `droppedPort`, `droppedPayload` and
+     * `droppedDuplicate` fields, or null if there's no filter.
+     */
+    async getFilterStats() {
+
+        // Pass request to native lib
+        return NativeModules.RNNetworkStack.udpGetFilterStats(this.id)
+
+    }
+
     /**
      * Send a packet of data to a remote device. Right now, only UTF8 encoding of data is supported.
      * 